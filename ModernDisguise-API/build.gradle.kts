@@ -18,6 +18,17 @@ repositories {
 dependencies {
     compileOnlyApi("org.jetbrains:annotations:24.1.0")
     compileOnly("org.spigotmc:spigot:1.8.8-R0.1-SNAPSHOT")
+
+    testImplementation("org.junit.jupiter:junit-jupiter:5.10.2")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+    // bundled with spigot at runtime, the tests run without a server
+    testImplementation("com.googlecode.json-simple:json-simple:1.1.1") {
+        exclude(group = "junit")
+    }
+}
+
+tasks.test {
+    useJUnitPlatform()
 }
 
 tasks.withType<JavaCompile> {
@@ -0,0 +1,316 @@
+package dev.iiahmed.disguise;
+
+import dev.iiahmed.disguise.util.HttpStatusException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The {@code CachedSkinAPI} class wraps another {@link SkinAPI} and remembers its results, so fetching
+ * the same skin again doesn't hit the network until the cached result expires.
+ * <p>
+ * Failed fetches are remembered for a shorter time to avoid hammering a service that is down (timeouts & rate
+ * limits aren't, those pass), and concurrent fetches of the same value share a single request to the wrapped
+ * {@link SkinAPI}. A synchronous {@link #of(Context)} never waits on another fetch, it requests the skin itself
+ * when one is already running.
+ * The least recently used results are evicted once the cache is full.
+ *
+ * @param <V> the type of the value used for context, typically {@code UUID}
+ */
+@SuppressWarnings("unused")
+public class CachedSkinAPI<V> extends SkinAPI<V> {
+
+    private final SkinAPI<V> delegate;
+    private final int maximumSize;
+    private final long ttl, negativeTtl;
+    private final Map<V, Cached> entries;
+    private final Map<V, CompletableFuture<Skin>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong(),
+            coalesced = new AtomicLong(), evictions = new AtomicLong();
+
+    /**
+     * Constructs a new {@code CachedSkinAPI}, failures are remembered for at most 30 seconds.
+     *
+     * @param delegate    the {@link SkinAPI} the skins are fetched with
+     * @param maximumSize the maximum amount of cached results
+     * @param ttl         the time a fetched skin is kept for
+     * @param unit        the unit of the ttl
+     */
+    public CachedSkinAPI(@NotNull final SkinAPI<V> delegate, final int maximumSize, final long ttl, @NotNull final TimeUnit unit) {
+        this(delegate, maximumSize, unit.toMillis(ttl), Math.min(unit.toMillis(ttl), TimeUnit.SECONDS.toMillis(30)), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Constructs a new {@code CachedSkinAPI}.
+     *
+     * @param delegate    the {@link SkinAPI} the skins are fetched with
+     * @param maximumSize the maximum amount of cached results
+     * @param ttl         the time a fetched skin is kept for
+     * @param negativeTtl the time a failed fetch is remembered for
+     * @param unit        the unit of both ttls
+     */
+    public CachedSkinAPI(
+            @NotNull final SkinAPI<V> delegate,
+            final int maximumSize,
+            final long ttl,
+            final long negativeTtl,
+            @NotNull final TimeUnit unit
+    ) {
+        super(context -> delegate.of(context));
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("The maximum size must be at least 1");
+        }
+        this.delegate = delegate;
+        this.maximumSize = maximumSize;
+        this.ttl = unit.toMillis(ttl);
+        this.negativeTtl = unit.toMillis(negativeTtl);
+        this.entries = new LinkedHashMap<V, Cached>(16, 0.75F, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<V, Cached> eldest) {
+                if (size() > CachedSkinAPI.this.maximumSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public Skin of(@NotNull final Context<V> context) {
+        final Skin local = this.local(context);
+        if (local != null) {
+            return local;
+        }
+
+        final V key = context.value();
+        final Cached entry = this.get(key);
+        if (entry != null) {
+            return entry.unwrap();
+        }
+
+        final CompletableFuture<Skin> created = new CompletableFuture<>();
+        final CompletableFuture<Skin> existing = inFlight.putIfAbsent(key, created);
+        misses.incrementAndGet();
+        if (existing != null) {
+            // the running fetch may be an async one waiting out a rate limit, the calling
+            // thread (usually the main one) fetches on its own instead of blocking behind it
+            final Skin skin = delegate.of(context);
+            this.put(key, new Cached(skin, null, ttl));
+            return skin;
+        }
+
+        Skin skin = null;
+        Throwable failure = null;
+        try {
+            skin = delegate.of(context);
+            return skin;
+        } catch (final Throwable throwable) {
+            failure = throwable;
+            throw throwable;
+        } finally {
+            this.complete(key, created, skin, failure);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Skin> ofAsync(@NotNull final Context<V> context) {
+        return this.load(context, () -> delegate.ofAsync(context));
+    }
+
+    @Override
+    public CompletableFuture<Skin> ofAsync(@NotNull final Context<V> context, final long timeout, @NotNull final TimeUnit unit) {
+        return this.load(context, () -> delegate.ofAsync(context, timeout, unit));
+    }
+
+    private CompletableFuture<Skin> load(
+            @NotNull final Context<V> context,
+            @NotNull final Supplier<CompletableFuture<Skin>> fetch
+    ) {
+        final Skin local = this.local(context);
+        if (local != null) {
+            return CompletableFuture.completedFuture(local);
+        }
+
+        final V key = context.value();
+        final Cached entry = this.get(key);
+        if (entry != null) {
+            final CompletableFuture<Skin> future = new CompletableFuture<>();
+            if (entry.failure != null) {
+                future.completeExceptionally(entry.failure);
+            } else {
+                future.complete(entry.skin);
+            }
+            return future;
+        }
+
+        final CompletableFuture<Skin> created = new CompletableFuture<>();
+        final CompletableFuture<Skin> existing = inFlight.putIfAbsent(key, created);
+        // every caller gets its own dependent future, completing or cancelling it doesn't affect the others
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return existing.thenApply(Function.identity());
+        }
+
+        misses.incrementAndGet();
+        final CompletableFuture<Skin> fetched;
+        try {
+            fetched = fetch.get();
+        } catch (final Throwable throwable) {
+            this.complete(key, created, null, throwable);
+            return created.thenApply(Function.identity());
+        }
+        fetched.whenComplete((skin, throwable) -> this.complete(key, created, skin, throwable == null ? null :
+                throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable));
+        return created.thenApply(Function.identity());
+    }
+
+    /**
+     * Remembers the result of a fetch & hands it to the fetches that joined it
+     */
+    private void complete(
+            @NotNull final V key,
+            @NotNull final CompletableFuture<Skin> created,
+            @Nullable final Skin skin,
+            @Nullable final Throwable failure
+    ) {
+        try {
+            if (failure == null) {
+                this.put(key, new Cached(skin, null, ttl));
+            } else if (isCacheable(failure)) {
+                this.put(key, new Cached(null, failure, negativeTtl));
+            }
+        } finally {
+            inFlight.remove(key, created);
+            if (failure == null) {
+                created.complete(skin);
+            } else {
+                created.completeExceptionally(failure);
+            }
+        }
+    }
+
+    /**
+     * @return false for failures that say nothing about the value, like timeouts & rate limits
+     */
+    private static boolean isCacheable(@NotNull final Throwable failure) {
+        if (!(failure instanceof Exception) || failure instanceof TimeoutException) {
+            return false;
+        }
+        return !(failure instanceof HttpStatusException) || !((HttpStatusException) failure).isThrottled();
+    }
+
+    private Cached get(final V key) {
+        synchronized (entries) {
+            final Cached entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt <= System.currentTimeMillis()) {
+                entries.remove(key);
+                evictions.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return entry;
+        }
+    }
+
+    private void put(final V key, final Cached entry) {
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    /**
+     * Forgets the cached result of a value, the next fetch of it hits the wrapped {@link SkinAPI} again.
+     *
+     * @param value the value to forget
+     */
+    public void invalidate(@NotNull final V value) {
+        synchronized (entries) {
+            entries.remove(value);
+        }
+    }
+
+    /**
+     * Forgets every cached result.
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * @return the amount of currently cached results, including expired ones that weren't looked up since
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return the amount of fetches answered from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the amount of fetches that had to hit the wrapped {@link SkinAPI}
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the amount of fetches that joined an already running fetch of the same value
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * @return the amount of results dropped because they expired or the cache was full
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    private static final class Cached {
+
+        private final Skin skin;
+        private final Throwable failure;
+        private final long expiresAt;
+
+        private Cached(final Skin skin, final Throwable failure, final long ttl) {
+            this.skin = skin;
+            this.failure = failure;
+            this.expiresAt = System.currentTimeMillis() + ttl;
+        }
+
+        private Skin unwrap() {
+            if (failure == null) {
+                return skin;
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            throw new RuntimeException(failure);
+        }
+
+    }
+
+}
@@ -0,0 +1,333 @@
+package dev.iiahmed.disguise;
+
+import dev.iiahmed.disguise.util.SkinExecutor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code CompositeSkinAPI} class fetches skins from several {@link SkinAPI}s, the first valid skin wins.
+ * <p>
+ * Sources are tried one after another (healthy ones first, the fastest of those first), a source that fails
+ * or takes longer than the timeout is given up on for the next one. With hedging enabled an asynchronous fetch
+ * also starts the next source once the current one takes longer than it usually does (its 95th percentile).
+ *
+ * @param <V> the type of the value used for context, typically {@code UUID}
+ */
+@SuppressWarnings("unused")
+public class CompositeSkinAPI<V> extends SkinAPI<V> {
+
+    private static final double ALPHA = 0.2D;
+    private static final int SAMPLES = 32;
+    private static final int MIN_HEDGE_SAMPLES = 8;
+
+    private final List<Source<V>> sources;
+    private final long timeout;
+    private final boolean hedge;
+
+    /**
+     * Constructs a new {@code CompositeSkinAPI}.
+     *
+     * @param timeout the time each source is given before the next one is tried
+     * @param unit    the unit of the timeout
+     * @param hedge   whether a slow source should start the next one while it's still running
+     * @param sources the sources in order of priority
+     */
+    @SafeVarargs
+    public CompositeSkinAPI(final long timeout, @NotNull final TimeUnit unit, final boolean hedge, @NotNull final SkinAPI<V>... sources) {
+        this(timeout, unit, hedge, Arrays.asList(sources));
+    }
+
+    /**
+     * Constructs a new {@code CompositeSkinAPI}.
+     *
+     * @param timeout the time each source is given before the next one is tried
+     * @param unit    the unit of the timeout
+     * @param hedge   whether a slow source should start the next one while it's still running
+     * @param sources the sources in order of priority
+     */
+    public CompositeSkinAPI(final long timeout, @NotNull final TimeUnit unit, final boolean hedge, @NotNull final List<SkinAPI<V>> sources) {
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("A CompositeSkinAPI needs at least one source");
+        }
+        final List<Source<V>> list = new ArrayList<>(sources.size());
+        for (int i = 0; i < sources.size(); i++) {
+            list.add(new Source<>(sources.get(i), i));
+        }
+        this.sources = Collections.unmodifiableList(list);
+        this.timeout = unit.toMillis(timeout);
+        this.hedge = hedge;
+    }
+
+    /**
+     * Tries the sources one after another, each of them runs on the skin executor
+     * so a slow one is given up on after the timeout just like in an asynchronous fetch.
+     */
+    @Override
+    protected Skin fetch(@NotNull final Context<V> context) {
+        Throwable failure = null;
+        for (final Source<V> source : this.ordered()) {
+            final long start = System.nanoTime();
+            try {
+                final Skin skin = SkinExecutor.supply(() -> source.api.of(context), timeout, TimeUnit.MILLISECONDS).get();
+                if (skin != null && skin.isValid()) {
+                    source.record(true, System.nanoTime() - start);
+                    return skin;
+                }
+                source.record(false, System.nanoTime() - start);
+            } catch (final ExecutionException exception) {
+                source.record(false, System.nanoTime() - start);
+                failure = exception.getCause();
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while fetching a skin", exception);
+            }
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        throw new RuntimeException("No source returned a valid skin", failure);
+    }
+
+    @Override
+    public CompletableFuture<Skin> ofAsync(@NotNull final Context<V> context) {
+        return this.ofAsync(context, timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Fetches a {@code Skin} off the calling thread using the specified {@code Context}.
+     *
+     * @param context the context used to provide a value for fetching the skin
+     * @param timeout the time each source is given before the next one is tried
+     * @param unit    the unit of the timeout
+     * @return a future of the first valid {@code Skin}, it fails if every source does
+     */
+    @Override
+    public CompletableFuture<Skin> ofAsync(@NotNull final Context<V> context, final long timeout, @NotNull final TimeUnit unit) {
+        final Skin local = this.local(context);
+        if (local != null) {
+            return CompletableFuture.completedFuture(local);
+        }
+        return new Attempt(context, this.ordered(), unit.toMillis(timeout)).start();
+    }
+
+    /**
+     * @param api one of the sources
+     * @return the share of recent fetches that returned a valid skin, from 0 to 1
+     */
+    public double getHealth(@NotNull final SkinAPI<V> api) {
+        return this.source(api).health;
+    }
+
+    /**
+     * @param api one of the sources
+     * @return the average time of recent fetches in milliseconds, 0 if it wasn't used yet
+     */
+    public double getLatency(@NotNull final SkinAPI<V> api) {
+        return this.source(api).latency / 1_000_000D;
+    }
+
+    private Source<V> source(@NotNull final SkinAPI<V> api) {
+        for (final Source<V> source : sources) {
+            if (source.api == api) {
+                return source;
+            }
+        }
+        throw new IllegalArgumentException("The SkinAPI is not a source of this CompositeSkinAPI");
+    }
+
+    /**
+     * @return the sources with healthy ones first, those sorted by their latency & the rest by priority
+     */
+    private List<Source<V>> ordered() {
+        // the stats are read once, they can change while sorting & the comparator has to stay consistent
+        final int size = sources.size();
+        final boolean[] healthy = new boolean[size];
+        final double[] latency = new double[size];
+        final List<Source<V>> ordered = new ArrayList<>(sources);
+        for (int i = 0; i < size; i++) {
+            final Source<V> source = sources.get(i);
+            healthy[i] = source.isHealthy();
+            // a source that wasn't used yet is tried early so it gets measured
+            latency[i] = source.samples > 0 ? source.latency : 0;
+        }
+        ordered.sort((first, second) -> {
+            final int a = first.priority, b = second.priority;
+            if (healthy[a] != healthy[b]) {
+                return healthy[a] ? -1 : 1;
+            }
+            if (healthy[a]) {
+                final int compare = Double.compare(latency[a], latency[b]);
+                if (compare != 0) {
+                    return compare;
+                }
+            }
+            return Integer.compare(a, b);
+        });
+        return ordered;
+    }
+
+    /**
+     * A single asynchronous fetch going through the sources, a source is started by the hedge
+     * or by the failure of the previous one & both decide under the same lock
+     */
+    private final class Attempt {
+
+        private final CompletableFuture<Skin> result = new CompletableFuture<>();
+        private final Context<V> context;
+        private final List<Source<V>> order;
+        private final long timeout;
+        // guarded by this
+        private int next, running;
+        private Throwable failure;
+
+        private Attempt(final Context<V> context, final List<Source<V>> order, final long timeout) {
+            this.context = context;
+            this.order = order;
+            this.timeout = timeout;
+        }
+
+        private CompletableFuture<Skin> start() {
+            synchronized (this) {
+                next = 1;
+                running = 1;
+            }
+            this.launch(0);
+            return result;
+        }
+
+        /**
+         * Starts the next source while the current one is still running
+         */
+        private void hedge() {
+            final int index;
+            synchronized (this) {
+                if (result.isDone() || next >= order.size()) {
+                    return;
+                }
+                index = next++;
+                running++;
+            }
+            this.launch(index);
+        }
+
+        /**
+         * Called once a source finished without a valid skin, starts the next source
+         * or fails the fetch if none is left & no other source is still running
+         */
+        private void failed(@Nullable final Throwable throwable) {
+            final int index;
+            final Throwable cause;
+            synchronized (this) {
+                running--;
+                if (throwable != null) {
+                    failure = throwable instanceof CompletionException && throwable.getCause() != null ?
+                            throwable.getCause() : throwable;
+                }
+                if (result.isDone()) {
+                    return;
+                }
+                if (next < order.size()) {
+                    index = next++;
+                    running++;
+                } else if (running == 0) {
+                    index = -1;
+                } else {
+                    return;
+                }
+                cause = failure;
+            }
+
+            if (index == -1) {
+                result.completeExceptionally(cause != null ? cause : new RuntimeException("No source returned a valid skin"));
+            } else {
+                this.launch(index);
+            }
+        }
+
+        private void launch(final int index) {
+            final Source<V> source = order.get(index);
+            final long start = System.nanoTime();
+            final ScheduledFuture<?> hedgeTask = hedge && index + 1 < order.size() && source.samples >= MIN_HEDGE_SAMPLES ?
+                    SkinExecutor.schedule(this::hedge, Math.min(source.percentile95(), TimeUnit.MILLISECONDS.toNanos(timeout)), TimeUnit.NANOSECONDS) :
+                    null;
+
+            final CompletableFuture<Skin> future;
+            try {
+                future = source.api.ofAsync(context, timeout, TimeUnit.MILLISECONDS);
+            } catch (final RuntimeException exception) {
+                if (hedgeTask != null) {
+                    hedgeTask.cancel(false);
+                }
+                source.record(false, System.nanoTime() - start);
+                this.failed(exception);
+                return;
+            }
+            future.whenComplete((skin, throwable) -> {
+                if (hedgeTask != null) {
+                    hedgeTask.cancel(false);
+                }
+                final boolean valid = throwable == null && skin != null && skin.isValid();
+                source.record(valid, System.nanoTime() - start);
+                if (valid) {
+                    result.complete(skin);
+                } else {
+                    this.failed(throwable);
+                }
+            });
+        }
+
+    }
+
+    /**
+     * A source along with its recent health & latency
+     */
+    private static final class Source<V> {
+
+        private final SkinAPI<V> api;
+        private final int priority;
+        private final long[] recent = new long[SAMPLES];
+        private volatile double health = 1D, latency;
+        private volatile int samples;
+
+        private Source(final SkinAPI<V> api, final int priority) {
+            this.api = api;
+            this.priority = priority;
+        }
+
+        private boolean isHealthy() {
+            return health >= 0.5D;
+        }
+
+        private synchronized void record(final boolean success, final long nanos) {
+            health = health * (1 - ALPHA) + (success ? ALPHA : 0);
+            if (!success) {
+                return;
+            }
+            latency = samples == 0 ? nanos : latency * (1 - ALPHA) + nanos * ALPHA;
+            recent[samples % SAMPLES] = nanos;
+            samples++;
+        }
+
+        /**
+         * @return the 95th percentile of the recent successful fetches in nanoseconds
+         */
+        private synchronized long percentile95() {
+            final int count = Math.min(samples, SAMPLES);
+            final long[] sorted = Arrays.copyOf(recent, count);
+            Arrays.sort(sorted);
+            return sorted[Math.max(0, (int) Math.ceil(count * 0.95D) - 1)];
+        }
+
+    }
+
+}
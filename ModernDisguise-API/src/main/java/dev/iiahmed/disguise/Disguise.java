@@ -4,6 +4,7 @@ import org.bukkit.entity.EntityType;
 import org.jetbrains.annotations.ApiStatus;
 
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
 
 @SuppressWarnings("unused")
@@ -95,6 +96,7 @@ public final class Disguise {
 
         private String name;
         private Skin skin;
+        private CompletableFuture<Skin> pendingSkin;
         private Entity entity;
 
         /* we don't allow constructors from outside */
@@ -168,6 +170,30 @@ public final class Disguise {
          */
         public Builder setSkin(final Skin skin) {
             this.skin = skin;
+            this.pendingSkin = null;
+            return this;
+        }
+
+        /**
+         * Fetches the skin off the calling thread, use {@link #buildAsync()} to wait for it
+         *
+         * @param value   this is the value required by the skin api
+         * @param api     determines the SkinAPI type
+         * @return the disguise builder
+         */
+        public <V> Builder setSkinAsync(final SkinAPI<V> api, final V value) {
+            return setSkin(api.ofAsync(value));
+        }
+
+        /**
+         * Sets the skin to the result of a pending fetch, use {@link #buildAsync()} to wait for it
+         *
+         * @param skin the pending skin
+         * @return the disguise builder
+         */
+        public Builder setSkin(final CompletableFuture<Skin> skin) {
+            this.skin = null;
+            this.pendingSkin = skin;
             return this;
         }
 
@@ -205,9 +231,24 @@ public final class Disguise {
          * @return a new instance of {@link Disguise} with the collected info
          */
         public Disguise build() {
+            if (pendingSkin != null) {
+                return new Disguise(name, pendingSkin.join(), entity);
+            }
             return new Disguise(name, skin, entity);
         }
 
+        /**
+         * @return a future of a new {@link Disguise} with the collected info, completed once the pending skin is fetched
+         */
+        public CompletableFuture<Disguise> buildAsync() {
+            final String name = this.name;
+            final Entity entity = this.entity;
+            if (pendingSkin == null) {
+                return CompletableFuture.completedFuture(new Disguise(name, skin, entity));
+            }
+            return pendingSkin.thenApply(skin -> new Disguise(name, skin, entity));
+        }
+
     }
 
 }
@@ -4,30 +4,61 @@ import com.mojang.authlib.GameProfile;
 import com.mojang.authlib.properties.Property;
 import dev.iiahmed.disguise.util.DefaultEntityProvider;
 import dev.iiahmed.disguise.util.DisguiseUtil;
+import dev.iiahmed.disguise.util.IntMap;
+import dev.iiahmed.disguise.util.PacketBatch;
 import dev.iiahmed.disguise.util.Version;
+import io.netty.channel.ChannelHandler;
+import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.bukkit.plugin.Plugin;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.logging.Level;
 import java.util.regex.Pattern;
 
 @SuppressWarnings("unused")
 public abstract class DisguiseProvider {
 
+    // a login that didn't turn into a join by then is dropped, the connection closed in between
+    private static final long LOGIN_TIMEOUT = TimeUnit.MINUTES.toNanos(1);
+
     private Pattern namePattern = Pattern.compile("^[a-zA-Z0-9_]{1,16}$");
     private boolean overrideChat = Version.isOver(18);
+    private RefreshMode refreshMode = RefreshMode.RESPAWN;
     private int nameLength = 16;
 
     private final Map<UUID, PlayerInfo> playerInfo = new ConcurrentHashMap<>();
+    private final Map<UUID, EntityTemplate> entityTemplates = new ConcurrentHashMap<>();
+    // the lowercase real names of online players, kept from join to quit so they can be read off the main thread
+    private final Map<String, UUID> onlineIds = new ConcurrentHashMap<>();
+    // the real skins of online players, read from their profiles on the main thread before any disguise
+    private final Map<UUID, Skin> realSkins = new ConcurrentHashMap<>();
+    // the state of logging in players, only committed once they join
+    private final Map<UUID, Login> logins = new ConcurrentHashMap<>();
+    // disguises registered before their players joined, applied while they log in
+    private final Map<UUID, Disguise> pending = new ConcurrentHashMap<>();
+    private volatile BiFunction<UUID, String, Disguise> prefetcher;
+    // entity id -> entity disguise, read lock-free by the netty event loops
+    private volatile IntMap<DisguiseSnapshot> entityIndex = IntMap.empty();
 
     protected Plugin plugin;
     protected boolean entityDisguises, checkOnlineNames = true;
     protected EntityProvider entityProvider = new DefaultEntityProvider();
+    // creates the packet handlers, which are only injected while an entity disguise is active
+    protected Function<Player, ChannelHandler> packetHandler;
 
     /**
      * Set the username {@link Pattern} that is
@@ -107,6 +138,26 @@ public abstract class DisguiseProvider {
         return this.overrideChat;
     }
 
+    /**
+     * Sets how disguised {@link Player}s see their own changes, {@link RefreshMode#RESPAWN} by default.
+     * Servers that don't need players to see their own skin can skip the respawn (and the chunks it re-sends).
+     *
+     * @param refreshMode the {@link RefreshMode} used for the disguised {@link Player}s themselves
+     * @see DisguiseProvider#getRefreshMode()
+     */
+    public DisguiseProvider setRefreshMode(@NotNull final RefreshMode refreshMode) {
+        this.refreshMode = refreshMode;
+        return this;
+    }
+
+    /**
+     * @return the {@link RefreshMode} used for the disguised {@link Player}s themselves
+     * @see DisguiseProvider#setRefreshMode(RefreshMode)
+     */
+    public @NotNull RefreshMode getRefreshMode() {
+        return this.refreshMode;
+    }
+
     /**
      * Retrieves the current {@link EntityProvider} instance.
      *
@@ -126,6 +177,94 @@ public abstract class DisguiseProvider {
         this.entityProvider = entityProvider;
     }
 
+    /**
+     * Sets the resolver of the disguises players should join with, it's called off the main thread
+     * during {@link org.bukkit.event.player.AsyncPlayerPreLoginEvent} (before the player exists) so it can
+     * block on skin fetches, the disguise is then applied as a pending disguise without any request.
+     * <p>
+     * The resolver returns null for players that shouldn't be disguised, a failing resolver doesn't
+     * stop the player from joining.
+     *
+     * @param prefetcher the resolver taking the player's {@link UUID} & name, or null to disable prefetching
+     * @see Disguise.Builder#build()
+     * @see DisguiseProvider#setPendingDisguise(UUID, Disguise)
+     */
+    public void setPrefetcher(@Nullable final BiFunction<UUID, String, Disguise> prefetcher) {
+        this.prefetcher = prefetcher;
+    }
+
+    /**
+     * Registers a disguise for a player that isn't online yet, it's applied to their profile while they
+     * log in, before the server sends their profile to anyone, so joining needs no refresh at all.
+     * Disguises with an entity are applied on join instead, the same way {@link #disguise(Player, Disguise)} does.
+     *
+     * @param uuid     the {@link UUID} of the player
+     * @param disguise the disguise that the player should join with
+     */
+    public final void setPendingDisguise(@NotNull final UUID uuid, @NotNull final Disguise disguise) {
+        this.pending.put(uuid, disguise);
+    }
+
+    /**
+     * Removes the pending disguise of a player that didn't join yet
+     *
+     * @param uuid the {@link UUID} of the player
+     * @return the removed disguise, or null if there is none
+     */
+    public final @Nullable Disguise removePendingDisguise(@NotNull final UUID uuid) {
+        return this.pending.remove(uuid);
+    }
+
+    /**
+     * Remembers the real skin of a logging in {@link Player} until they join, this has to be called
+     * before {@link #disguiseOnLogin(Player)} replaces the profile. Logins that never turn into a join
+     * are dropped after a minute.
+     *
+     * @param player the logging in {@link Player}
+     */
+    @ApiStatus.Internal
+    public final void trackLogin(@NotNull final Player player) {
+        final long now = System.nanoTime();
+        this.logins.values().removeIf(login -> now - login.time > LOGIN_TIMEOUT);
+        final Skin skin = DisguiseUtil.getSkin(player);
+        this.logins.put(player.getUniqueId(), new Login(now, skin.isValid() ? skin : null, null));
+    }
+
+    /**
+     * Forgets a login that won't turn into a join, along with its pending disguise
+     *
+     * @param uuid the {@link UUID} of the player
+     */
+    @ApiStatus.Internal
+    public final void forgetLogin(@NotNull final UUID uuid) {
+        this.pending.remove(uuid);
+        this.logins.remove(uuid);
+    }
+
+    /**
+     * Resolves & keeps the disguise of a joining player, this blocks for as long as the resolver does
+     *
+     * @param uuid the {@link UUID} of the joining player
+     * @param name the name of the joining player
+     */
+    @ApiStatus.Internal
+    public final void prefetch(@NotNull final UUID uuid, @NotNull final String name) {
+        final BiFunction<UUID, String, Disguise> prefetcher = this.prefetcher;
+        if (prefetcher == null) {
+            return;
+        }
+
+        try {
+            final Disguise disguise = prefetcher.apply(uuid, name);
+            if (disguise != null && !disguise.isEmpty()) {
+                this.pending.put(uuid, disguise);
+            }
+        } catch (final Throwable throwable) {
+            Bukkit.getLogger().log(Level.WARNING, "[ModernDisguise] Failed to prefetch the disguise of " + name, throwable);
+        }
+    }
+
+
     /**
      * Disguises a {@link Player} with a valid {@link Disguise}
      *
@@ -151,6 +290,8 @@ public abstract class DisguiseProvider {
             return DisguiseResponse.FAIL_ENTITY_NOT_SUPPORTED;
         }
 
+        // what actually changes, the cheapest refresh that shows those changes is picked at the end
+        final EnumSet<Change> changes = EnumSet.noneOf(Change.class);
         String realName = player.getName();
         String nickname = realName;
         final GameProfile profile = DisguiseUtil.getProfile(player);
@@ -158,25 +299,28 @@ public abstract class DisguiseProvider {
             return DisguiseResponse.FAIL_PROFILE_NOT_FOUND;
         }
 
+        // the template is built before anything changes, one that can't be built leaves the player as they were
+        final PlayerInfo current = this.playerInfo.get(player.getUniqueId());
+        final Entity entity = disguise.hasEntity() ? disguise.getEntity()
+                : current != null && current.hasEntity() ? current.getEntity() : null;
+        final EntityTemplate cached = this.entityTemplates.get(player.getUniqueId());
+        final EntityTemplate template;
+        try {
+            template = entity != null && entity.isValid() ? this.buildEntityTemplate(player, entity, cached) : null;
+        } catch (final Exception exception) {
+            Bukkit.getLogger().log(Level.WARNING, "[ModernDisguise] Couldn't create the entity template for " + player.getName(), exception);
+            return DisguiseResponse.FAIL_ENTITY_NOT_SUPPORTED;
+        }
+
         if (disguise.hasName() && !disguise.getName().equals(player.getName())) {
             final String name = disguise.getName();
-
-            if (name.length() > nameLength) {
-                return DisguiseResponse.FAIL_NAME_TOO_LONG;
-            }
-
-            if (!namePattern.matcher(name).matches()) {
-                return DisguiseResponse.FAIL_NAME_INVALID;
-            }
-
-            if (this.checkOnlineNames) {
-                final Player found = DisguiseUtil.getPlayer(name);
-                if (found != null && found.isOnline()) {
-                    return DisguiseResponse.FAIL_NAME_ALREADY_ONLINE;
-                }
+            final DisguiseResponse invalid = this.checkName(name);
+            if (invalid != null) {
+                return invalid;
             }
 
             nickname = name;
+            changes.add(Change.NAME);
             try {
                 if (DisguiseUtil.IS_GAME_PROFILE_RECORD) {
                     // authlib 7.0+ - GameProfile is a Record, create new profile and replace
@@ -206,6 +350,9 @@ public abstract class DisguiseProvider {
             if (optional.isPresent()) {
                 realSkin = DisguiseUtil.getSkin(optional.get());
             }
+            if (realSkin == null || !disguise.getTextures().equals(realSkin.getTextures())) {
+                changes.add(Change.SKIN);
+            }
 
             if (DisguiseUtil.IS_GAME_PROFILE_RECORD) {
                 // authlib 7.0+ - create new profile with updated skin
@@ -223,55 +370,233 @@ public abstract class DisguiseProvider {
             }
         }
 
-        Entity entity = disguise.getEntity();
+        Entity previousEntity = null;
         if (isDisguised(player)) {
-            final PlayerInfo info = this.playerInfo.remove(player.getUniqueId());
-            if (info.hasName()) {
-                DisguiseUtil.unregister(info.getNickname());
-                if (disguise.hasName()) nickname = info.getNickname();
+            final PlayerInfo previous = this.playerInfo.remove(player.getUniqueId());
+            if (previous.hasName()) {
+                DisguiseUtil.unregister(previous.getNickname());
+                if (disguise.hasName()) nickname = previous.getNickname();
             }
-            if (info.hasSkin()) {
-                realSkin = info.getSkin();
+            if (previous.hasSkin()) {
+                realSkin = previous.getSkin();
+            }
+            realName = previous.getName();
+
+            if (previous.hasEntity()) {
+                previousEntity = previous.getEntity();
             }
-            realName = info.getName();
+        }
 
-            if (info.hasEntity() && !disguise.hasEntity()) {
-                entity = info.getEntity();
+        if (disguise.hasEntity()) {
+            if (cached == null || previousEntity == null || previousEntity.getType() != entity.getType()) {
+                changes.add(Change.ENTITY);
+            } else if (!cached.isFor(entity)) {
+                changes.add(Change.ATTRIBUTES);
             }
         }
 
-        playerInfo.put(
-                player.getUniqueId(),
-                new PlayerInfo(
-                        realName,
-                        nickname,
-                        realSkin,
-                        entity
-                )
+        final PlayerInfo info = new PlayerInfo(
+                realName,
+                nickname,
+                realSkin,
+                entity
         );
+        playerInfo.put(player.getUniqueId(), info);
 
-        if (disguise.hasName() || disguise.hasSkin()) {
-            final boolean flying = player.isFlying();
-            final int foodLevel = player.getFoodLevel();
-            final float saturation = player.getSaturation();
-            final float exhaustion = player.getExhaustion();
+        // the template is cached before the disguise is indexed, the packet listener can then only ever read it
+        if (template != null) {
+            this.entityTemplates.put(player.getUniqueId(), template);
+        } else {
+            this.entityTemplates.remove(player.getUniqueId());
+        }
+        this.index(player, info, template);
 
-            this.refreshAsPlayer(player);
+        // a new entity spawn replaces the player for its trackers, re-tracking them as well would spawn it twice
+        final boolean retrack = !changes.contains(Change.ENTITY) || template == null;
+        if (changes.contains(Change.SKIN)) {
+            // only a respawn shows the player their own new skin
+            this.refreshWithRespawn(player, retrack);
+        } else if (changes.contains(Change.NAME)) {
+            // a name is only shown to others, besides the player's own tab list entry
+            this.refreshViewers(player, this.refreshMode != RefreshMode.NONE, retrack);
+        }
 
-            player.teleport(player.getLocation());
-            player.setFlying(flying);
-            player.setFoodLevel(foodLevel);
-            player.setSaturation(saturation);
-            player.setExhaustion(exhaustion);
+        // players that don't track the disguised player yet get the disguise through the packet listener
+        if (changes.contains(Change.ENTITY)) {
+            if (template != null) {
+                this.refreshAsEntity(player, template, true, this.getTrackers(player));
+            }
+        } else if (changes.contains(Change.ATTRIBUTES) && template != null) {
+            final PacketBatch batch = this.batch(1).add(template.getAttributes());
+            for (final Player tracker : this.getTrackers(player)) {
+                batch.send(tracker);
+            }
         }
 
-        if (disguise.hasEntity()) {
-            refreshAsEntity(player, true, player.getWorld().getPlayers().toArray(new Player[0]));
+        return DisguiseResponse.SUCCESS;
+    }
+
+    /**
+     * Applies the pending disguise of a logging in {@link Player} to their profile, this has to happen
+     * before the server sends the player's info to anyone (during {@link org.bukkit.event.player.PlayerLoginEvent}).
+     * The player only counts as disguised once they join, see {@link #trackOnline(Player)}
+     *
+     * @param player the logging in {@link Player}
+     * @return the response of the disguise action, or null if there is nothing to apply at login
+     * @see DisguiseProvider#setPendingDisguise(UUID, Disguise)
+     */
+    @ApiStatus.Internal
+    public final @Nullable DisguiseResponse disguiseOnLogin(@NotNull final Player player) {
+        final Disguise disguise = this.pending.get(player.getUniqueId());
+        // an entity disguise needs the player to be tracked already
+        if (disguise == null || disguise.hasEntity() || !this.pending.remove(player.getUniqueId(), disguise)) {
+            return null;
         }
 
+        if (!isVersionSupported()) {
+            return DisguiseResponse.FAIL_VERSION_NOT_SUPPORTED;
+        }
+
+        if (plugin == null || !plugin.isEnabled()) {
+            return DisguiseResponse.FAIL_PLUGIN_NOT_INITIALIZED;
+        }
+
+        if (disguise.isEmpty()) {
+            return DisguiseResponse.FAIL_EMPTY_DISGUISE;
+        }
+
+        final GameProfile profile = DisguiseUtil.getProfile(player);
+        if (profile == null) {
+            return DisguiseResponse.FAIL_PROFILE_NOT_FOUND;
+        }
+
+        final String realName = DisguiseUtil.getProfileName(profile);
+        String nickname = realName;
+        if (disguise.hasName() && !disguise.getName().equals(realName)) {
+            final DisguiseResponse invalid = this.checkName(disguise.getName());
+            if (invalid != null) {
+                return invalid;
+            }
+            nickname = disguise.getName();
+        }
+
+        Skin realSkin = null;
+        if (disguise.hasSkin()) {
+            final Optional<Property> optional = DisguiseUtil.getProfileProperties(profile).get("textures").stream().findFirst();
+            if (optional.isPresent()) {
+                realSkin = DisguiseUtil.getSkin(optional.get());
+            }
+        }
+
+        // nobody has seen the profile yet, changing it is all it takes
+        if (DisguiseUtil.IS_GAME_PROFILE_RECORD) {
+            final GameProfile newProfile = disguise.hasSkin() ?
+                    DisguiseUtil.createProfileWithNameAndSkin(profile, nickname, disguise.getTextures(), disguise.getSignature()) :
+                    DisguiseUtil.createProfileWithName(profile, nickname);
+            if (!DisguiseUtil.replaceProfile(player, newProfile)) {
+                return DisguiseResponse.FAIL_NAME_CHANGE_EXCEPTION;
+            }
+        } else {
+            try {
+                DisguiseUtil.PROFILE_NAME.set(profile, nickname);
+            } catch (final IllegalAccessException e) {
+                // shouldn't happen
+                return DisguiseResponse.FAIL_NAME_CHANGE_EXCEPTION;
+            }
+            if (disguise.hasSkin()) {
+                profile.getProperties().removeAll("textures");
+                profile.getProperties().put("textures", new Property("textures", disguise.getTextures(), disguise.getSignature()));
+            }
+        }
+
+        final Login login = this.logins.get(player.getUniqueId());
+        this.logins.put(player.getUniqueId(), new Login(
+                System.nanoTime(),
+                login == null ? realSkin : login.realSkin,
+                new PlayerInfo(realName, nickname, realSkin, null)
+        ));
         return DisguiseResponse.SUCCESS;
     }
 
+    /**
+     * Finishes the disguise of a joined {@link Player}, this registers the nickname of a disguise applied
+     * at login & applies a pending disguise that couldn't be applied at login
+     *
+     * @param player the joined {@link Player}
+     * @return the response of the disguise action, or null if there was no pending disguise left
+     */
+    @ApiStatus.Internal
+    public final @Nullable DisguiseResponse disguiseOnJoin(@NotNull final Player player) {
+        final PlayerInfo info = this.playerInfo.get(player.getUniqueId());
+        if (info != null && info.hasName()) {
+            DisguiseUtil.register(info.getNickname(), player);
+        }
+
+        final Disguise disguise = this.pending.remove(player.getUniqueId());
+        return disguise == null ? null : this.disguise(player, disguise);
+    }
+
+    /**
+     * Disguises a {@link Player} once a pending {@link Disguise} is ready (see {@link Disguise.Builder#buildAsync()}),
+     * the disguise is applied on the thread that owns the player (the main thread, or their region's thread on Folia)
+     *
+     * @param player   the disguising player
+     * @param disguise the pending disguise that the player should use
+     * @return a future of the response, completed on the thread that owns the player
+     * @see DisguiseProvider#disguise(Player, Disguise)
+     */
+    public final @NotNull CompletableFuture<DisguiseResponse> disguise(
+            @NotNull final Player player,
+            @NotNull final CompletableFuture<Disguise> disguise
+    ) {
+        final CompletableFuture<DisguiseResponse> response = new CompletableFuture<>();
+        disguise.whenComplete((result, throwable) -> {
+            if (plugin == null || !plugin.isEnabled()) {
+                response.complete(DisguiseResponse.FAIL_PLUGIN_NOT_INITIALIZED);
+                return;
+            }
+
+            DisguiseUtil.runFor(plugin, player, () -> {
+                if (!player.isOnline()) {
+                    response.complete(DisguiseResponse.FAIL_PLAYER_OFFLINE);
+                } else if (throwable != null) {
+                    response.complete(DisguiseResponse.FAIL_SKIN_NOT_FOUND);
+                } else {
+                    try {
+                        response.complete(this.disguise(player, result));
+                    } catch (final Throwable exception) {
+                        response.completeExceptionally(exception);
+                    }
+                }
+            }, () -> response.complete(DisguiseResponse.FAIL_PLAYER_OFFLINE));
+        });
+        return response;
+    }
+
+    /**
+     * Checks whether a name can be used as a nickname
+     *
+     * @param name the nickname
+     * @return the reason the name can't be used, or null if it can
+     */
+    private @Nullable DisguiseResponse checkName(@NotNull final String name) {
+        if (name.length() > nameLength) {
+            return DisguiseResponse.FAIL_NAME_TOO_LONG;
+        }
+
+        if (!namePattern.matcher(name).matches()) {
+            return DisguiseResponse.FAIL_NAME_INVALID;
+        }
+
+        if (this.checkOnlineNames) {
+            final Player found = DisguiseUtil.getPlayer(name);
+            if (found != null && found.isOnline()) {
+                return DisguiseResponse.FAIL_NAME_ALREADY_ONLINE;
+            }
+        }
+        return null;
+    }
+
     /**
      * Unisguises a disguised {@link Player}
      *
@@ -291,6 +616,8 @@ public abstract class DisguiseProvider {
                 return UndisguiseResponse.FAIL_PROFILE_NOT_FOUND;
             }
             final PlayerInfo info = this.playerInfo.remove(player.getUniqueId());
+            this.index(player, null, null);
+            this.entityTemplates.remove(player.getUniqueId());
             if (info.hasName()) {
                 DisguiseUtil.unregister(info.getNickname());
             }
@@ -344,8 +671,15 @@ public abstract class DisguiseProvider {
         }
 
         this.playerInfo.remove(player.getUniqueId());
-        this.refreshAsPlayer(player);
-        player.teleport(player.getLocation());
+        // unpublished first, so the packet listener never sees the disguise without its template
+        this.index(player, null, null);
+        this.entityTemplates.remove(player.getUniqueId());
+        if (info.hasSkin()) {
+            this.refreshWithRespawn(player, true);
+        } else {
+            // trackers get the player re-spawned, which also takes the entity disguise off
+            this.refreshViewers(player, info.hasName() && this.refreshMode != RefreshMode.NONE);
+        }
 
         return UndisguiseResponse.SUCCESS;
     }
@@ -367,6 +701,71 @@ public abstract class DisguiseProvider {
         return info != null && info.hasEntity() && this.entityProvider.isSupported(info.getEntityType());
     }
 
+    /**
+     * Looks up an entity disguise by the entity id of the disguised {@link Player},
+     * this never blocks nor touches the server so it's safe to call from netty threads.
+     *
+     * @param entityId the entity id of the disguised {@link Player}
+     * @return the {@link DisguiseSnapshot} of the entity disguise, or null if there's none
+     */
+    public final @Nullable DisguiseSnapshot getEntityDisguise(final int entityId) {
+        return this.entityIndex.get(entityId);
+    }
+
+    /**
+     * Publishes (or removes) the entity disguise of a {@link Player} in the entity id index.
+     *
+     * @param player   the disguised {@link Player}
+     * @param info     the current {@link PlayerInfo} of the player, or null if undisguised
+     * @param template the {@link EntityTemplate} of the disguise, or null if there's none
+     */
+    private synchronized void index(
+            @NotNull final Player player,
+            @Nullable final PlayerInfo info,
+            @Nullable final EntityTemplate template
+    ) {
+        final int active = this.entityIndex.size();
+        final int entityId = player.getEntityId();
+        if (info != null && info.hasEntity() && template != null && this.entityProvider.isSupported(info.getEntityType())) {
+            this.entityIndex = this.entityIndex.with(entityId, new DisguiseSnapshot(player, info, template));
+        } else {
+            this.entityIndex = this.entityIndex.without(entityId);
+        }
+
+        final int now = this.entityIndex.size();
+        if (active == 0 && now != 0) {
+            this.setInjected(true);
+        } else if (active != 0 && now == 0) {
+            this.setInjected(false);
+        }
+    }
+
+    /**
+     * Injects the packet handler into (or removes it out of) every online {@link Player},
+     * called when the first entity disguise is applied and when the last one is removed.
+     *
+     * @param injected whether the packet handler should be injected or not
+     */
+    private void setInjected(final boolean injected) {
+        if (this.packetHandler == null) {
+            return;
+        }
+        for (final Player online : Bukkit.getOnlinePlayers()) {
+            if (injected) {
+                DisguiseUtil.inject(online, this.packetHandler.apply(online));
+            } else {
+                DisguiseUtil.uninject(online);
+            }
+        }
+    }
+
+    /**
+     * @return the amount of players that are currently disguised as an entity
+     */
+    public final int getActiveEntityDisguises() {
+        return this.entityIndex.size();
+    }
+
     /**
      * @param player the {@link Player} you're grabbing info about
      * @return the known info about a {@link Player}
@@ -378,18 +777,279 @@ public abstract class DisguiseProvider {
         return new PlayerInfo(player.getName(), null, null, null);
     }
 
+    /**
+     * Commits the login of a joined {@link Player} (the disguise applied at login & the real skin) and remembers
+     * their real name & skin, see {@link #getOnlineId(String)} and {@link #getRealSkin(UUID)}
+     *
+     * @param player the joined {@link Player}
+     */
+    @ApiStatus.Internal
+    public final void trackOnline(@NotNull final Player player) {
+        final UUID uuid = player.getUniqueId();
+        final Login login = this.logins.remove(uuid);
+        if (login != null && login.info != null) {
+            this.playerInfo.put(uuid, login.info);
+        }
+
+        this.onlineIds.put(this.getInfo(player).getName().toLowerCase(Locale.ENGLISH), uuid);
+        final Skin skin;
+        if (login != null) {
+            skin = login.realSkin;
+        } else {
+            // not tracked at login, a skin disguise keeps the real skin in the info
+            final PlayerInfo info = this.playerInfo.get(uuid);
+            skin = info != null && info.hasSkin() ? info.getSkin() : DisguiseUtil.getSkin(player);
+        }
+        if (skin != null && skin.isValid()) {
+            this.realSkins.put(uuid, skin);
+        }
+    }
+
+    /**
+     * Forgets a quitting {@link Player}, this has to be called before they're undisguised
+     *
+     * @param player the quitting {@link Player}
+     */
+    @ApiStatus.Internal
+    public final void untrackOnline(@NotNull final Player player) {
+        this.onlineIds.remove(this.getInfo(player).getName().toLowerCase(Locale.ENGLISH), player.getUniqueId());
+        this.realSkins.remove(player.getUniqueId());
+    }
+
+    /**
+     * Finds an online player by their real name, unlike {@link Bukkit#getPlayerExact(String)} this never
+     * matches the nickname of a disguised player & is safe to call off the main thread
+     *
+     * @param realName the real name of the player, case insensitive
+     * @return the {@link UUID} of the player, or null if no online player has that real name
+     */
+    public @Nullable UUID getOnlineId(@NotNull final String realName) {
+        return this.onlineIds.get(realName.toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Reads the real skin of an online {@link Player} from memory, without any request,
+     * it's safe to call off the main thread as it never touches the live profile
+     *
+     * @param uuid the {@link UUID} of the player
+     * @return the real skin of the player, or null if they're not online or have no signed skin
+     */
+    public @Nullable Skin getRealSkin(@NotNull final UUID uuid) {
+        return this.realSkins.get(uuid);
+    }
+
     /**
      * This sends packets to {@link Player}s to show changes like name and skin
      *
      * @param player the refreshed {@link Player}
      */
-    abstract public void refreshAsPlayer(@NotNull final Player player);
+    public void refreshAsPlayer(@NotNull final Player player) {
+        this.refreshAsPlayer(player, true);
+    }
+
+    /**
+     * @param player  the refreshed {@link Player}
+     * @param retrack whether the trackers get the {@link Player} re-spawned, or only the tab list entry
+     */
+    private void refreshAsPlayer(@NotNull final Player player, final boolean retrack) {
+        if (!player.isOnline()) {
+            return;
+        }
+        switch (this.refreshMode) {
+            case RESPAWN:
+                this.refreshSelf(player);
+                this.refreshViewers(player, false, retrack);
+                break;
+            case PLAYER_INFO:
+                this.refreshViewers(player, true, retrack);
+                break;
+            case NONE:
+                this.refreshViewers(player, false, retrack);
+                break;
+        }
+    }
+
+    private void refreshViewers(@NotNull final Player player, final boolean self, final boolean retrack) {
+        if (retrack) {
+            this.refreshViewers(player, self);
+        } else {
+            this.refreshTabList(player, self);
+        }
+    }
+
+    /**
+     * Refreshes the {@link Player} for everyone including themselves, restoring the state
+     * that the client loses while respawning (if the {@link RefreshMode} respawns them).
+     *
+     * @param player  the refreshed {@link Player}
+     * @param retrack whether the trackers get the {@link Player} re-spawned, or only the tab list entry
+     */
+    private void refreshWithRespawn(@NotNull final Player player, final boolean retrack) {
+        if (this.refreshMode != RefreshMode.RESPAWN) {
+            this.refreshAsPlayer(player, retrack);
+            return;
+        }
+
+        final boolean flying = player.isFlying();
+        final int foodLevel = player.getFoodLevel();
+        final float saturation = player.getSaturation();
+        final float exhaustion = player.getExhaustion();
+
+        this.refreshAsPlayer(player, retrack);
+
+        player.teleport(player.getLocation());
+        player.setFlying(flying);
+        player.setFoodLevel(foodLevel);
+        player.setSaturation(saturation);
+        player.setExhaustion(exhaustion);
+    }
+
+    /**
+     * Refreshes the {@link Player} for themselves (respawning them so their own client picks up the changes)
+     *
+     * @param player the refreshed {@link Player}
+     */
+    protected abstract void refreshSelf(@NotNull final Player player);
+
+    /**
+     * Refreshes the {@link Player} for everyone else, the tab list entry is broadcast once to every online
+     * {@link Player} that can see the refreshed one and only its trackers get it re-spawned.
+     *
+     * @param player the refreshed {@link Player}
+     * @param self   whether the {@link Player}'s own tab list entry should be re-sent too
+     */
+    protected abstract void refreshViewers(@NotNull final Player player, final boolean self);
+
+    /**
+     * Re-sends the tab list entry of the {@link Player} to every online {@link Player} that can see them,
+     * without re-spawning the {@link Player} for its trackers
+     *
+     * @param player the refreshed {@link Player}
+     * @param self   whether the {@link Player}'s own tab list entry should be re-sent too
+     */
+    protected abstract void refreshTabList(@NotNull final Player player, final boolean self);
+
+    /**
+     * @param refreshed the refreshed {@link Player}
+     * @param targets   the needed {@link Player}s to receive refresh packets
+     */
+    public final void refreshAsEntity(@NotNull final Player refreshed, final boolean remove, final Player... targets) {
+        final EntityTemplate template = this.getEntityTemplate(refreshed);
+        if (template != null) {
+            this.refreshAsEntity(refreshed, template, remove, targets);
+        }
+    }
+
+    /**
+     * Spawns the entity disguise of a snapshot for a {@link Player}, the packet listener's path
+     * which uses the snapshot's own template instead of looking the disguise up again.
+     *
+     * @param snapshot the {@link DisguiseSnapshot} of the disguised {@link Player}
+     * @param target   the {@link Player} receiving the disguise
+     */
+    @ApiStatus.Internal
+    public final void refreshAsEntity(@NotNull final DisguiseSnapshot snapshot, @NotNull final Player target) {
+        this.refreshAsEntity(snapshot.getPlayer(), snapshot.getTemplate(), false, target);
+    }
 
     /**
      * @param refreshed the refreshed {@link Player}
+     * @param template  the {@link EntityTemplate} of the refreshed {@link Player}'s disguise
+     * @param remove    whether the refreshed {@link Player}'s entity is destroyed first
      * @param targets   the needed {@link Player}s to receive refresh packets
      */
-    abstract public void refreshAsEntity(@NotNull final Player refreshed, final boolean remove, final Player... targets);
+    protected abstract void refreshAsEntity(@NotNull final Player refreshed, @NotNull final EntityTemplate template, final boolean remove, final Player... targets);
+
+    /**
+     * Finds the {@link Player}s that are currently tracking (seeing) a {@link Player},
+     * versions that can read the server's entity tracker override this.
+     *
+     * @param player the tracked {@link Player}
+     * @return the tracking {@link Player}s, or every {@link Player} in the same world if the tracker is unknown
+     */
+    protected Player[] getTrackers(@NotNull final Player player) {
+        return player.getWorld().getPlayers().toArray(new Player[0]);
+    }
+
+    /**
+     * Creates the packets that spawn the entity disguise of a {@link Player} in place of its player
+     * spawn packet, used to rewrite bundles without dropping the packets bundled alongside the spawn.
+     *
+     * @param snapshot the {@link DisguiseSnapshot} of the {@link Player} disguised as an entity
+     * @return the spawn packets (in order), or null if the version doesn't bundle packets
+     */
+    @ApiStatus.Internal
+    public final @Nullable List<?> createEntitySpawnPackets(@NotNull final DisguiseSnapshot snapshot) {
+        return this.createEntitySpawnPackets(snapshot.getPlayer(), snapshot.getTemplate());
+    }
+
+    /**
+     * @param refreshed the {@link Player} disguised as an entity
+     * @param template  the {@link EntityTemplate} of the {@link Player}'s disguise
+     * @return the spawn packets (in order), or null if the version doesn't bundle packets
+     */
+    protected @Nullable List<?> createEntitySpawnPackets(@NotNull final Player refreshed, @NotNull final EntityTemplate template) {
+        return null;
+    }
+
+    /**
+     * Sends a single packet through the server's connection of a {@link Player},
+     * only used by batches when the {@link Player}'s channel is unavailable.
+     *
+     * @param target the {@link Player} receiving the packet
+     * @param packet the sent packet
+     */
+    protected abstract void sendPacket(@NotNull final Player target, @NotNull final Object packet);
+
+    /**
+     * @param expected the expected amount of packets
+     * @return a new {@link PacketBatch} that writes its packets & flushes once per target
+     */
+    protected final PacketBatch batch(final int expected) {
+        return new PacketBatch(this::sendPacket, expected);
+    }
+
+    /**
+     * Builds the version specific {@link EntityTemplate} of an entity disguise,
+     * this is only called once per disguise (or after its attributes change).
+     *
+     * @param player the disguised {@link Player}
+     * @param entity the {@link Entity} the player is disguised as
+     * @return the built template
+     * @throws Exception if the NMS entity couldn't be created
+     */
+    protected abstract EntityTemplate createEntityTemplate(@NotNull final Player player, @NotNull final Entity entity) throws Exception;
+
+    /**
+     * Reads the {@link EntityTemplate} of a player, it never builds one so it's safe to call from the netty threads
+     *
+     * @param player the disguised {@link Player}
+     * @return the cached {@link EntityTemplate} of the player, or null if the player is not disguised as an entity
+     */
+    protected final @Nullable EntityTemplate getEntityTemplate(@NotNull final Player player) {
+        return this.entityTemplates.get(player.getUniqueId());
+    }
+
+    /**
+     * Builds the {@link EntityTemplate} of an entity disguise unless the cached one still fits, it doesn't cache
+     * the template. This creates an NMS entity so it only ever runs on the thread that owns the player
+     *
+     * @param player the disguised {@link Player}
+     * @param entity the {@link Entity} the player is disguised as
+     * @param cached the currently cached template of the player, or null
+     * @return the template, or null if the version couldn't build one
+     * @throws Exception if the NMS entity couldn't be created
+     */
+    private @Nullable EntityTemplate buildEntityTemplate(
+            @NotNull final Player player,
+            @NotNull final Entity entity,
+            @Nullable final EntityTemplate cached
+    ) throws Exception {
+        if (cached != null && cached.isFor(entity)) {
+            return cached;
+        }
+        return this.createEntityTemplate(player, entity);
+    }
 
     /**
      * @return false if version is NOT supported
@@ -420,4 +1080,31 @@ public abstract class DisguiseProvider {
         return this.entityDisguises;
     }
 
+    /**
+     * The parts of a disguise that can change, each needs a different set of packets to be shown
+     */
+    private enum Change {
+        NAME,
+        SKIN,
+        ENTITY,
+        ATTRIBUTES
+    }
+
+    /**
+     * What a logging in player brings along until they join
+     */
+    private static final class Login {
+
+        private final long time;
+        private final Skin realSkin;
+        private final PlayerInfo info;
+
+        private Login(final long time, @Nullable final Skin realSkin, @Nullable final PlayerInfo info) {
+            this.time = time;
+            this.realSkin = realSkin;
+            this.info = info;
+        }
+
+    }
+
 }
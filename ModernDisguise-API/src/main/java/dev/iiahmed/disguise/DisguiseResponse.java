@@ -43,6 +43,14 @@ public enum DisguiseResponse {
      * Returns when the provided nickname's length is longer than 16 characters.
      */
     FAIL_NAME_TOO_LONG,
+    /**
+     * Returns when the skin of an asynchronous disguise failed to be fetched or timed out
+     */
+    FAIL_SKIN_NOT_FOUND,
+    /**
+     * Returns when the player left before their asynchronous disguise was ready
+     */
+    FAIL_PLAYER_OFFLINE,
     /**
      * Returns when the disguise request succeeds
      */
@@ -0,0 +1,54 @@
+package dev.iiahmed.disguise;
+
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.UUID;
+
+/**
+ * An immutable view of a player's entity disguise, indexed by the player's entity id
+ * so that the packet listener can resolve it without touching the server.
+ */
+public final class DisguiseSnapshot {
+
+    private final Player player;
+    private final UUID uniqueId;
+    private final PlayerInfo info;
+    private final EntityTemplate template;
+
+    DisguiseSnapshot(@NotNull final Player player, @NotNull final PlayerInfo info, @NotNull final EntityTemplate template) {
+        this.player = player;
+        this.uniqueId = player.getUniqueId();
+        this.info = info;
+        this.template = template;
+    }
+
+    /**
+     * @return the disguised {@link Player}
+     */
+    public @NotNull Player getPlayer() {
+        return player;
+    }
+
+    /**
+     * @return the {@link UUID} of the disguised {@link Player}
+     */
+    public @NotNull UUID getUniqueId() {
+        return uniqueId;
+    }
+
+    /**
+     * @return the {@link PlayerInfo} of the disguise at the time this snapshot was taken
+     */
+    public @NotNull PlayerInfo getInfo() {
+        return info;
+    }
+
+    /**
+     * @return the {@link EntityTemplate} the disguise was built with, so spawns never look it up again
+     */
+    public @NotNull EntityTemplate getTemplate() {
+        return template;
+    }
+
+}
@@ -0,0 +1,85 @@
+package dev.iiahmed.disguise;
+
+import dev.iiahmed.disguise.attribute.Attribute;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The {@code EntityTemplate} class holds everything an entity disguise needs that does not
+ * depend on the disguised player's position (the NMS entity used for its type and UUID and
+ * the prebuilt attribute and destroy packets).
+ * <p>
+ * Templates are built once per disguise by the version provider, refreshes then only have
+ * to stamp the position and rotation of the disguised player onto the spawn packet.
+ */
+@SuppressWarnings("unchecked")
+public final class EntityTemplate {
+
+    private final Entity entity;
+    private final Map<Attribute, Double> attributeValues;
+    private final Object handle, spawn, attributes, destroy;
+
+    /**
+     * Constructs a new {@code EntityTemplate}.
+     *
+     * @param entity     the {@link Entity} this template was built for
+     * @param handle     the NMS entity used as the source of the type & UUID, it's never added to a world
+     * @param spawn      the prebuilt spawn packet if it doesn't depend on the player's position, or null
+     * @param attributes the prebuilt attributes packet
+     * @param destroy    the prebuilt destroy packet
+     */
+    public EntityTemplate(
+            @NotNull final Entity entity,
+            @NotNull final Object handle,
+            @Nullable final Object spawn,
+            @NotNull final Object attributes,
+            @NotNull final Object destroy
+    ) {
+        this.entity = entity;
+        this.attributeValues = new HashMap<>(entity.getAttributes());
+        this.handle = handle;
+        this.spawn = spawn;
+        this.attributes = attributes;
+        this.destroy = destroy;
+    }
+
+    /**
+     * @param entity the {@link Entity} being checked
+     * @return true if this template was built for the given {@link Entity} and its attributes didn't change since
+     */
+    public boolean isFor(@Nullable final Entity entity) {
+        return this.entity == entity && this.attributeValues.equals(entity.getAttributes());
+    }
+
+    /**
+     * @return the NMS entity of this template
+     */
+    public <T> T getHandle() {
+        return (T) handle;
+    }
+
+    /**
+     * @return the prebuilt spawn packet, null if the version has to build it per refresh
+     */
+    public <T> T getSpawn() {
+        return (T) spawn;
+    }
+
+    /**
+     * @return the prebuilt attributes packet
+     */
+    public <T> T getAttributes() {
+        return (T) attributes;
+    }
+
+    /**
+     * @return the prebuilt destroy packet
+     */
+    public <T> T getDestroy() {
+        return (T) destroy;
+    }
+
+}
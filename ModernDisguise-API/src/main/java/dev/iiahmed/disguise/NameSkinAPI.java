@@ -0,0 +1,341 @@
+package dev.iiahmed.disguise;
+
+import dev.iiahmed.disguise.util.HttpStatusException;
+import dev.iiahmed.disguise.util.HttpUtil;
+import dev.iiahmed.disguise.util.RequestScheduler;
+import dev.iiahmed.disguise.util.SkinExecutor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * The {@code NameSkinAPI} class fetches skins by player name, it resolves the name to the player's
+ * {@code UUID} through Mojang and then fetches the skin with a {@code UUID} based {@link SkinAPI}.
+ * <p>
+ * Names of online players are resolved locally, resolved names are cached (unknown names for a shorter time)
+ * and asynchronous lookups made close together are sent to Mojang as a single batched request.
+ * Every request goes through a {@link RequestScheduler}, so a burst of lookups waits for Mojang's rate limit
+ * instead of failing.
+ */
+@SuppressWarnings({"unused", "unchecked"})
+public class NameSkinAPI extends SkinAPI<String> {
+
+    /**
+     * Resolves names through Mojang & fetches their skins with {@link SkinAPI#MOJANG}
+     */
+    public static final NameSkinAPI MOJANG = new NameSkinAPI(SkinAPI.MOJANG);
+
+    private static final String API_URL = "https://api.mojang.com";
+    private static final int BATCH_SIZE = 10;
+    private static final long BATCH_DELAY = 50L;
+
+    private final SkinAPI<UUID> skins;
+    private final String profileUrl, bulkUrl;
+    private final RequestScheduler scheduler;
+    private final int maximumSize;
+    private final long ttl, negativeTtl;
+    private final Map<String, Resolved> ids;
+    private final Map<String, CompletableFuture<UUID>> inFlight = new ConcurrentHashMap<>();
+    private final Object batchLock = new Object();
+    private Map<String, CompletableFuture<UUID>> batch = new HashMap<>();
+    private ScheduledFuture<?> flushTask;
+
+    /**
+     * Constructs a new {@code NameSkinAPI} that remembers up to 1024 names for an hour, unknown ones for 5 minutes.
+     *
+     * @param skins the {@link SkinAPI} the skins of the resolved {@code UUID}s are fetched with
+     */
+    public NameSkinAPI(@NotNull final SkinAPI<UUID> skins) {
+        this(skins, API_URL, RequestScheduler.MOJANG_API);
+    }
+
+    /**
+     * Constructs a new {@code NameSkinAPI} that remembers up to 1024 names for an hour, unknown ones for 5 minutes.
+     *
+     * @param skins     the {@link SkinAPI} the skins of the resolved {@code UUID}s are fetched with
+     * @param apiUrl    the base URL of the profile API, like {@code https://api.mojang.com}
+     * @param scheduler the scheduler that keeps the name lookups under the API's rate limit
+     */
+    public NameSkinAPI(@NotNull final SkinAPI<UUID> skins, @NotNull final String apiUrl, @NotNull final RequestScheduler scheduler) {
+        this(skins, apiUrl, scheduler, 1024, TimeUnit.HOURS.toMillis(1), TimeUnit.MINUTES.toMillis(5), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Constructs a new {@code NameSkinAPI}.
+     *
+     * @param skins       the {@link SkinAPI} the skins of the resolved {@code UUID}s are fetched with
+     * @param maximumSize the maximum amount of remembered names
+     * @param ttl         the time a resolved name is remembered for
+     * @param negativeTtl the time an unknown name is remembered for
+     * @param unit        the unit of both ttls
+     */
+    public NameSkinAPI(
+            @NotNull final SkinAPI<UUID> skins,
+            final int maximumSize,
+            final long ttl,
+            final long negativeTtl,
+            @NotNull final TimeUnit unit
+    ) {
+        this(skins, API_URL, RequestScheduler.MOJANG_API, maximumSize, ttl, negativeTtl, unit);
+    }
+
+    /**
+     * Constructs a new {@code NameSkinAPI}.
+     *
+     * @param skins       the {@link SkinAPI} the skins of the resolved {@code UUID}s are fetched with
+     * @param apiUrl      the base URL of the profile API, like {@code https://api.mojang.com}
+     * @param scheduler   the scheduler that keeps the name lookups under the API's rate limit
+     * @param maximumSize the maximum amount of remembered names
+     * @param ttl         the time a resolved name is remembered for
+     * @param negativeTtl the time an unknown name is remembered for
+     * @param unit        the unit of both ttls
+     */
+    public NameSkinAPI(
+            @NotNull final SkinAPI<UUID> skins,
+            @NotNull final String apiUrl,
+            @NotNull final RequestScheduler scheduler,
+            final int maximumSize,
+            final long ttl,
+            final long negativeTtl,
+            @NotNull final TimeUnit unit
+    ) {
+        this.skins = skins;
+        this.profileUrl = apiUrl + "/users/profiles/minecraft/%name%";
+        this.bulkUrl = apiUrl + "/profiles/minecraft";
+        this.scheduler = scheduler;
+        this.maximumSize = maximumSize;
+        this.ttl = unit.toMillis(ttl);
+        this.negativeTtl = unit.toMillis(negativeTtl);
+        this.ids = new LinkedHashMap<String, Resolved>(16, 0.75F, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Resolved> eldest) {
+                return size() > NameSkinAPI.this.maximumSize;
+            }
+        };
+    }
+
+    @Override
+    protected Skin fetch(@NotNull final Context<String> context) {
+        final String name = context.value();
+        final String key = name.toLowerCase(Locale.ENGLISH);
+        Resolved resolved = this.cached(key);
+        if (resolved == null) {
+            resolved = this.store(key, scheduler.call(() -> this.fetchId(name)));
+        }
+        if (resolved.id == null) {
+            throw unknown(name);
+        }
+        return skins.of(resolved.id);
+    }
+
+    @Override
+    public CompletableFuture<Skin> ofAsync(@NotNull final Context<String> context) {
+        final Skin local = this.local(context);
+        if (local != null) {
+            return CompletableFuture.completedFuture(local);
+        }
+        final String name = context.value();
+        return this.resolveId(name).thenCompose(id -> id == null ? NameSkinAPI.<Skin>failed(unknown(name)) : skins.ofAsync(id));
+    }
+
+    @Override
+    public CompletableFuture<Skin> ofAsync(@NotNull final Context<String> context, final long timeout, @NotNull final TimeUnit unit) {
+        final Skin local = this.local(context);
+        if (local != null) {
+            return CompletableFuture.completedFuture(local);
+        }
+        final String name = context.value();
+        return this.resolveId(name).thenCompose(id -> id == null ? NameSkinAPI.<Skin>failed(unknown(name)) : skins.ofAsync(() -> id, timeout, unit));
+    }
+
+    /**
+     * Resolves a name to the {@code UUID} of its premium account, batched with other names resolved at the same time.
+     *
+     * @param name the player name
+     * @return a future of the {@code UUID}, completed with null if no account has that name
+     */
+    public CompletableFuture<UUID> resolveId(@NotNull final String name) {
+        final String key = name.toLowerCase(Locale.ENGLISH);
+        final Resolved resolved = this.cached(key);
+        if (resolved != null) {
+            return CompletableFuture.completedFuture(resolved.id);
+        }
+
+        synchronized (batchLock) {
+            final CompletableFuture<UUID> existing = inFlight.get(key);
+            // every caller gets its own dependent future, completing or cancelling it doesn't affect the others
+            if (existing != null) {
+                return existing.thenApply(Function.identity());
+            }
+            final CompletableFuture<UUID> future = new CompletableFuture<>();
+            inFlight.put(key, future);
+            batch.put(key, future);
+            if (batch.size() >= BATCH_SIZE) {
+                this.flush();
+            } else if (flushTask == null) {
+                flushTask = SkinExecutor.schedule(this::flush, BATCH_DELAY, TimeUnit.MILLISECONDS);
+            }
+            return future.thenApply(Function.identity());
+        }
+    }
+
+    @Override
+    protected @Nullable Skin local(@NotNull final Context<String> context) {
+        // by real name only, a player disguised under this name doesn't have its skin
+        final UUID id = localId(context.value());
+        return id == null ? null : localSkin(id);
+    }
+
+    /**
+     * Sends every name waiting in the batch as one request, it waits in the scheduler's queue if Mojang is busy
+     */
+    private void flush() {
+        final Map<String, CompletableFuture<UUID>> names;
+        synchronized (batchLock) {
+            if (flushTask != null) {
+                flushTask.cancel(false);
+                flushTask = null;
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            names = batch;
+            batch = new HashMap<>();
+        }
+
+        final JSONArray body = new JSONArray();
+        body.addAll(names.keySet());
+        final CompletableFuture<Object> request;
+        try {
+            request = scheduler.submit(() -> HttpUtil.postJSON(bulkUrl, body.toJSONString()));
+        } catch (final Throwable throwable) {
+            this.fail(names, throwable);
+            return;
+        }
+        request.whenComplete((response, throwable) -> {
+            if (throwable != null) {
+                this.fail(names, throwable instanceof CompletionException && throwable.getCause() != null ?
+                        throwable.getCause() : throwable);
+                return;
+            }
+
+            final Map<String, UUID> found = new HashMap<>();
+            try {
+                if (!(response instanceof JSONArray)) {
+                    throw new IllegalStateException("Mojang answered a bulk lookup with " + response);
+                }
+                for (final Object element : (JSONArray) response) {
+                    final JSONObject profile = (JSONObject) element;
+                    final String name = (String) profile.get("name");
+                    final String id = (String) profile.get("id");
+                    if (name != null && id != null) {
+                        found.put(name.toLowerCase(Locale.ENGLISH), parseId(id));
+                    }
+                }
+            } catch (final Throwable exception) {
+                this.fail(names, exception);
+                return;
+            }
+            names.forEach((key, future) -> {
+                try {
+                    future.complete(this.store(key, found.get(key)).id);
+                } catch (final Throwable exception) {
+                    future.completeExceptionally(exception);
+                } finally {
+                    inFlight.remove(key, future);
+                }
+            });
+        });
+    }
+
+    /**
+     * Fails every lookup of a batch, the names aren't remembered so they're looked up again next time
+     */
+    private void fail(@NotNull final Map<String, CompletableFuture<UUID>> names, @NotNull final Throwable throwable) {
+        names.forEach((key, future) -> {
+            inFlight.remove(key, future);
+            future.completeExceptionally(throwable);
+        });
+    }
+
+    private @Nullable Resolved cached(@NotNull final String key) {
+        synchronized (ids) {
+            final Resolved resolved = ids.get(key);
+            if (resolved != null && resolved.expiresAt <= System.currentTimeMillis()) {
+                ids.remove(key);
+                return null;
+            }
+            return resolved;
+        }
+    }
+
+    private @NotNull Resolved store(@NotNull final String key, @Nullable final UUID id) {
+        final Resolved resolved = new Resolved(id, id == null ? negativeTtl : ttl);
+        synchronized (ids) {
+            ids.put(key, resolved);
+        }
+        return resolved;
+    }
+
+    /**
+     * Resolves a single name on the calling thread
+     */
+    private @Nullable UUID fetchId(@NotNull final String name) {
+        try {
+            final JSONObject profile = HttpUtil.getJSONObject(profileUrl.replace("%name%", name));
+            return parseId((String) profile.get("id"));
+        } catch (final HttpStatusException exception) {
+            // Mojang answers unknown names with 204 or 404
+            if (exception.getStatus() == 204 || exception.getStatus() == 404) {
+                return null;
+            }
+            throw exception;
+        }
+    }
+
+    private static @NotNull UUID parseId(@NotNull final String id) {
+        if (id.length() != 32) {
+            return UUID.fromString(id);
+        }
+        return new UUID(
+                Long.parseUnsignedLong(id.substring(0, 16), 16),
+                Long.parseUnsignedLong(id.substring(16), 16)
+        );
+    }
+
+    private static RuntimeException unknown(@NotNull final String name) {
+        return new IllegalArgumentException("There is no premium account named " + name);
+    }
+
+    private static <T> CompletableFuture<T> failed(@NotNull final Throwable throwable) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(throwable);
+        return future;
+    }
+
+    private static final class Resolved {
+
+        private final UUID id;
+        private final long expiresAt;
+
+        private Resolved(@Nullable final UUID id, final long ttl) {
+            this.id = id;
+            this.expiresAt = System.currentTimeMillis() + ttl;
+        }
+
+    }
+
+}
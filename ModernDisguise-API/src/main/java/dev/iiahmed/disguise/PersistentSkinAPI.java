@@ -0,0 +1,582 @@
+package dev.iiahmed.disguise;
+
+import dev.iiahmed.disguise.util.SkinExecutor;
+import org.bukkit.Bukkit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+/**
+ * The {@code PersistentSkinAPI} class wraps another {@link SkinAPI} and stores every fetched skin in a file,
+ * so a restarted server doesn't have to fetch the same skins again.
+ * <p>
+ * The file is an append-only log of records, the offset of every record is kept in an index file next to it
+ * which is saved periodically & on close, so a restart only scans the records appended after the last save.
+ * The file is only ever opened, appended to and compacted by a background thread, lookups wait for the first
+ * load without holding any lock and read their record with a single positional read. The log is rewritten with
+ * only the latest record of every key every few minutes, once most of it is outdated.
+ * <p>
+ * Skins older than the max age are fetched again, the stored skin is still used if that fetch fails.
+ * Wrap this with a {@link CachedSkinAPI} to keep the skins in memory as well.
+ *
+ * @param <V> the type of the value used for context, typically {@code UUID}
+ */
+@SuppressWarnings("unused")
+public class PersistentSkinAPI<V> extends SkinAPI<V> {
+
+    private static final int MAGIC = 0x4D44534B; // MDSK
+    private static final int INDEX_MAGIC = 0x4D445358; // MDSX
+    private static final int FORMAT = 1;
+    private static final int HEADER = 8;
+    private static final int BUFFER = 64 * 1024;
+    private static final int COMPACT_MIN_RECORDS = 64;
+    private static final long MAINTENANCE_INTERVAL = TimeUnit.MINUTES.toMillis(5);
+
+    private final SkinAPI<V> delegate;
+    private final File file, indexFile;
+    private final Function<V, String> keyMapper;
+    private final long maxAge;
+    private final Map<String, Long> index = new ConcurrentHashMap<>();
+    private final Map<String, Stored> pending = new ConcurrentHashMap<>();
+    private final CompletableFuture<Void> loaded = new CompletableFuture<>();
+    // lookups share the lock, only replacing or closing the file takes it exclusively
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService writer;
+    private FileChannel data;
+    // only touched by the writer thread
+    private long size;
+    private int records;
+    private boolean dirty;
+
+    /**
+     * Constructs a new {@code PersistentSkinAPI}, the values are stored by their {@link String#valueOf(Object)}.
+     *
+     * @param delegate the {@link SkinAPI} the skins are fetched with
+     * @param file     the file the skins are stored in
+     * @param maxAge   the age after which a stored skin is fetched again
+     * @param unit     the unit of the max age
+     */
+    public PersistentSkinAPI(@NotNull final SkinAPI<V> delegate, @NotNull final File file, final long maxAge, @NotNull final TimeUnit unit) {
+        this(delegate, file, String::valueOf, maxAge, unit);
+    }
+
+    /**
+     * Constructs a new {@code PersistentSkinAPI}, the file starts loading in the background right away.
+     *
+     * @param delegate  the {@link SkinAPI} the skins are fetched with
+     * @param file      the file the skins are stored in
+     * @param keyMapper maps a value to the key it's stored under
+     * @param maxAge    the age after which a stored skin is fetched again
+     * @param unit      the unit of the max age
+     */
+    public PersistentSkinAPI(
+            @NotNull final SkinAPI<V> delegate,
+            @NotNull final File file,
+            @NotNull final Function<V, String> keyMapper,
+            final long maxAge,
+            @NotNull final TimeUnit unit
+    ) {
+        super(context -> delegate.of(context));
+        this.delegate = delegate;
+        this.file = file;
+        this.indexFile = new File(file.getPath() + ".idx");
+        this.keyMapper = keyMapper;
+        this.maxAge = unit.toMillis(maxAge);
+        this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "ModernDisguise-SkinStore-" + file.getName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.writer.execute(this::load);
+        this.writer.scheduleWithFixedDelay(this::maintain, MAINTENANCE_INTERVAL, MAINTENANCE_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Skin of(@NotNull final Context<V> context) {
+        final Skin local = this.local(context);
+        if (local != null) {
+            return local;
+        }
+
+        final String key = keyMapper.apply(context.value());
+        final Stored stored = this.read(key);
+        if (this.isFresh(stored)) {
+            return stored.skin;
+        }
+
+        final Skin skin;
+        try {
+            skin = delegate.of(context);
+        } catch (final RuntimeException exception) {
+            if (stored != null) {
+                return stored.skin;
+            }
+            throw exception;
+        }
+        this.write(key, skin);
+        return skin;
+    }
+
+    @Override
+    public CompletableFuture<Skin> ofAsync(@NotNull final Context<V> context) {
+        return this.lookup(context, () -> delegate.ofAsync(context));
+    }
+
+    @Override
+    public CompletableFuture<Skin> ofAsync(@NotNull final Context<V> context, final long timeout, @NotNull final TimeUnit unit) {
+        return this.lookup(context, () -> delegate.ofAsync(context, timeout, unit));
+    }
+
+    /**
+     * Writes every pending skin & the index, then closes the file, later fetches aren't stored anymore.
+     */
+    public void close() {
+        if (writer.isShutdown()) {
+            return;
+        }
+        writer.execute(() -> {
+            this.saveIndex();
+            lock.writeLock().lock();
+            try {
+                this.closeFile();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the amount of skins currently stored
+     */
+    public int size() {
+        loaded.join();
+        int size = index.size();
+        for (final String key : pending.keySet()) {
+            if (!index.containsKey(key)) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Looks a skin up in the store on the skin executor, the fetch itself goes through the delegate's
+     * async lookup so the delegate's queueing & timeouts still apply.
+     */
+    private CompletableFuture<Skin> lookup(@NotNull final Context<V> context, @NotNull final Supplier<CompletableFuture<Skin>> fetch) {
+        final Skin local = this.local(context);
+        if (local != null) {
+            return CompletableFuture.completedFuture(local);
+        }
+
+        final String key = keyMapper.apply(context.value());
+        return CompletableFuture.supplyAsync(() -> this.read(key), SkinExecutor.getExecutor()).thenCompose(stored -> {
+            if (this.isFresh(stored)) {
+                return CompletableFuture.completedFuture(stored.skin);
+            }
+
+            CompletableFuture<Skin> future;
+            try {
+                future = fetch.get();
+            } catch (final RuntimeException exception) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(exception);
+            }
+            return future.handle((skin, failure) -> {
+                if (failure == null) {
+                    this.write(key, skin);
+                    return skin;
+                }
+                if (stored != null) {
+                    return stored.skin;
+                }
+                throw failure instanceof CompletionException ? (CompletionException) failure : new CompletionException(failure);
+            });
+        });
+    }
+
+    private boolean isFresh(@Nullable final Stored stored) {
+        return stored != null && System.currentTimeMillis() - stored.fetchedAt < maxAge;
+    }
+
+    private @Nullable Stored read(@NotNull final String key) {
+        final Stored queued = pending.get(key);
+        if (queued != null) {
+            return queued;
+        }
+
+        loaded.join();
+        lock.readLock().lock();
+        try {
+            final Long offset = index.get(key);
+            if (offset == null || data == null) {
+                return null;
+            }
+            final ByteBuffer length = ByteBuffer.allocate(4);
+            readFully(data, length, offset - 4);
+            final ByteBuffer body = ByteBuffer.allocate(length.getInt(0));
+            readFully(data, body, offset);
+
+            final DataInputStream input = new DataInputStream(new ByteArrayInputStream(body.array()));
+            final long fetchedAt = input.readLong();
+            final String textures = input.readUTF();
+            final String signature = input.readUTF();
+            return new Stored(new Skin(textures, signature.isEmpty() ? null : signature), fetchedAt);
+        } catch (final IOException | RuntimeException exception) {
+            Bukkit.getLogger().log(Level.WARNING, "[ModernDisguise] Failed to read a stored skin from " + file.getName(), exception);
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void write(@NotNull final String key, @Nullable final Skin skin) {
+        if (skin == null || !skin.isValid()) {
+            return;
+        }
+
+        final Stored stored = new Stored(skin, System.currentTimeMillis());
+        pending.put(key, stored);
+        try {
+            writer.execute(() -> {
+                try {
+                    if (data != null) {
+                        this.append(key, stored);
+                    }
+                } catch (final IOException exception) {
+                    Bukkit.getLogger().log(Level.WARNING, "[ModernDisguise] Failed to store a skin in " + file.getName(), exception);
+                } finally {
+                    pending.remove(key, stored);
+                }
+            });
+        } catch (final RejectedExecutionException ignored) {
+            // closed, the skin stays in memory only
+            pending.remove(key, stored);
+        }
+    }
+
+    /**
+     * Opens the file & fills the index from the saved index file, only the records appended after it was saved are scanned.
+     */
+    private void load() {
+        FileChannel channel = null;
+        try {
+            final File folder = file.getParentFile();
+            if (folder != null && !folder.isDirectory() && !folder.mkdirs()) {
+                throw new IOException("Couldn't create " + folder);
+            }
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+
+            final long length = channel.size();
+            final ByteBuffer header = ByteBuffer.allocate(HEADER);
+            if (length >= HEADER) {
+                readFully(channel, header, 0);
+            }
+            if (length < HEADER || header.getInt(0) != MAGIC || header.getInt(4) != FORMAT) {
+                Files.deleteIfExists(indexFile.toPath());
+                channel.truncate(0);
+                header.clear();
+                header.putInt(MAGIC).putInt(FORMAT).flip();
+                writeFully(channel, header, 0);
+                size = HEADER;
+            } else {
+                final long indexed = this.loadIndex(length);
+                size = this.scan(indexed, length);
+                dirty = size != indexed;
+                // drop a record that was cut off while being written
+                if (size < length) {
+                    channel.truncate(size);
+                }
+            }
+
+            lock.writeLock().lock();
+            try {
+                data = channel;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (final IOException exception) {
+            Bukkit.getLogger().log(Level.WARNING, "[ModernDisguise] Failed to load the skin store " + file.getName(), exception);
+            index.clear();
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (final IOException ignored) {
+                }
+            }
+        } finally {
+            loaded.complete(null);
+        }
+        this.compactIfNeeded();
+    }
+
+    /**
+     * @param length the length of the log
+     * @return the length of the log the saved index covers, the header's length if there's no usable index
+     */
+    private long loadIndex(final long length) {
+        if (!indexFile.isFile()) {
+            return HEADER;
+        }
+        try (final DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), BUFFER))) {
+            if (input.readInt() != INDEX_MAGIC || input.readInt() != FORMAT) {
+                return HEADER;
+            }
+            final long covered = input.readLong();
+            final int recordCount = input.readInt();
+            final int count = input.readInt();
+            if (covered < HEADER || covered > length) {
+                return HEADER;
+            }
+
+            final Map<String, Long> offsets = new HashMap<>(count * 4 / 3 + 1);
+            for (int i = 0; i < count; i++) {
+                offsets.put(input.readUTF(), input.readLong());
+            }
+            index.putAll(offsets);
+            records = recordCount;
+            return covered;
+        } catch (final IOException exception) {
+            // an unreadable index only costs a full scan
+            return HEADER;
+        }
+    }
+
+    /**
+     * Reads the key & offset of every record from a position on, the skins themselves are skipped.
+     *
+     * @return the length of the log up to the last complete record
+     */
+    private long scan(final long from, final long length) throws IOException {
+        long valid = from;
+        try (final FileInputStream stream = new FileInputStream(file)) {
+            stream.getChannel().position(from);
+            final DataInputStream input = new DataInputStream(new BufferedInputStream(stream, BUFFER));
+            while (valid < length) {
+                input.mark(2);
+                final int keyLength = input.readUnsignedShort();
+                input.reset();
+                final String key = input.readUTF();
+                final int bodyLength = input.readInt();
+                final long offset = valid + 2 + keyLength + 4;
+                if (bodyLength < 0 || offset + bodyLength > length) {
+                    break;
+                }
+                skipFully(input, bodyLength);
+                index.put(key, offset);
+                records++;
+                valid = offset + bodyLength;
+            }
+        } catch (final EOFException ignored) {
+        }
+        return valid;
+    }
+
+    private void append(@NotNull final String key, @NotNull final Stored stored) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        final DataOutputStream output = new DataOutputStream(bytes);
+        output.writeUTF(key);
+        output.writeInt(0);
+        final int header = output.size();
+        output.writeLong(stored.fetchedAt);
+        output.writeUTF(stored.skin.getTextures());
+        output.writeUTF(stored.skin.getSignature() == null ? "" : stored.skin.getSignature());
+
+        final ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        record.putInt(header - 4, record.capacity() - header);
+        writeFully(data, record, size);
+        index.put(key, size + header);
+        size += record.capacity();
+        records++;
+        dirty = true;
+    }
+
+    /**
+     * The periodic task of the writer thread, compacts the log if needed & saves the index
+     */
+    private void maintain() {
+        this.compactIfNeeded();
+        this.saveIndex();
+    }
+
+    private void compactIfNeeded() {
+        if (data == null || records < COMPACT_MIN_RECORDS || records <= index.size() * 2) {
+            return;
+        }
+        try {
+            this.compact();
+        } catch (final IOException exception) {
+            Bukkit.getLogger().log(Level.WARNING, "[ModernDisguise] Failed to compact the skin store " + file.getName(), exception);
+        }
+    }
+
+    /**
+     * Rewrites the log with only the latest record of every key
+     */
+    private void compact() throws IOException {
+        final File temp = new File(file.getPath() + ".tmp");
+        final Map<String, Long> offsets = new HashMap<>(index.size() * 4 / 3 + 1);
+        long position = HEADER;
+        try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), BUFFER))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            final ByteBuffer length = ByteBuffer.allocate(4);
+            for (final Map.Entry<String, Long> entry : index.entrySet()) {
+                length.clear();
+                readFully(data, length, entry.getValue() - 4);
+                final ByteBuffer body = ByteBuffer.allocate(length.getInt(0));
+                readFully(data, body, entry.getValue());
+
+                final int before = out.size();
+                out.writeUTF(entry.getKey());
+                out.writeInt(body.capacity());
+                position += out.size() - before;
+                offsets.put(entry.getKey(), position);
+                out.write(body.array());
+                position += body.capacity();
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            // the saved index must never outlive the log it was made for
+            Files.deleteIfExists(indexFile.toPath());
+            this.closeFile();
+            move(temp, file);
+            data = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            index.clear();
+            index.putAll(offsets);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        size = position;
+        records = offsets.size();
+        dirty = true;
+        this.saveIndex();
+    }
+
+    /**
+     * Saves the offset of every record along with the length of the log it covers
+     */
+    private void saveIndex() {
+        if (!dirty || data == null) {
+            return;
+        }
+        final File temp = new File(indexFile.getPath() + ".tmp");
+        try {
+            try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), BUFFER))) {
+                out.writeInt(INDEX_MAGIC);
+                out.writeInt(FORMAT);
+                out.writeLong(size);
+                out.writeInt(records);
+                out.writeInt(index.size());
+                for (final Map.Entry<String, Long> entry : index.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue());
+                }
+            }
+            move(temp, indexFile);
+            dirty = false;
+        } catch (final IOException exception) {
+            Bukkit.getLogger().log(Level.WARNING, "[ModernDisguise] Failed to save the index of " + file.getName(), exception);
+        }
+    }
+
+    private void closeFile() {
+        if (data == null) {
+            return;
+        }
+        try {
+            data.close();
+        } catch (final IOException ignored) {
+        }
+        data = null;
+    }
+
+    private static void move(@NotNull final File from, @NotNull final File to) throws IOException {
+        try {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final AtomicMoveNotSupportedException exception) {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void readFully(@NotNull final FileChannel channel, @NotNull final ByteBuffer buffer, final long position) throws IOException {
+        long at = position;
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, at);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            at += read;
+        }
+    }
+
+    private static void writeFully(@NotNull final FileChannel channel, @NotNull final ByteBuffer buffer, final long position) throws IOException {
+        long at = position;
+        while (buffer.hasRemaining()) {
+            at += channel.write(buffer, at);
+        }
+    }
+
+    private static void skipFully(@NotNull final DataInputStream input, final int length) throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            final int skipped = input.skipBytes(remaining);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            remaining -= skipped;
+        }
+    }
+
+    private static final class Stored {
+
+        private final Skin skin;
+        private final long fetchedAt;
+
+        private Stored(final Skin skin, final long fetchedAt) {
+            this.skin = skin;
+            this.fetchedAt = fetchedAt;
+        }
+
+    }
+
+}
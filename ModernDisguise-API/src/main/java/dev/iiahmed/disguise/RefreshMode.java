@@ -0,0 +1,24 @@
+package dev.iiahmed.disguise;
+
+/**
+ * How a disguised player's own client is refreshed when their name or skin changes,
+ * other players are always refreshed the same way.
+ */
+public enum RefreshMode {
+
+    /**
+     * Respawns the player, this is the only way for them to see their own new skin
+     * however it shows a loading screen and re-sends every chunk in their view distance
+     */
+    RESPAWN,
+    /**
+     * Only re-sends the player's own tab list entry, they see their new name & skin
+     * in the tab list but keep seeing their old skin in third person
+     */
+    PLAYER_INFO,
+    /**
+     * Sends nothing to the player themselves
+     */
+    NONE
+
+}
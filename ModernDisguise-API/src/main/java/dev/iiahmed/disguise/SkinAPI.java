@@ -1,11 +1,18 @@
 package dev.iiahmed.disguise;
 
-import dev.iiahmed.disguise.util.DisguiseUtil;
+import dev.iiahmed.disguise.util.HttpUtil;
+import dev.iiahmed.disguise.util.RequestScheduler;
+import dev.iiahmed.disguise.util.SkinExecutor;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 
+import java.io.File;
+import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 /**
@@ -18,13 +25,22 @@ import java.util.function.Function;
  *     <li>MineTools API</li>
  *     <li>MineSkin API</li>
  * </ul>
+ * <p>
+ * The default instances go through the {@link RequestScheduler} of their service. Their synchronous
+ * {@link #of(Object)} never waits for its rate limit: when no request can be made right away it throws a
+ * {@link dev.iiahmed.disguise.util.RateLimitedException} (a throttled HTTP 429) without contacting the service.
+ * {@link #ofAsync(Object)} waits for the rate limit instead.
  *
  * @param <V> the type of the value used for context, typically {@code UUID}
  */
 @SuppressWarnings("unused")
 public class SkinAPI<V> {
 
+    private static volatile Function<UUID, Skin> localResolver;
+    private static volatile Function<String, UUID> localIdResolver;
+
     private final Function<Context<V>, Skin> provider;
+    private final RequestScheduler scheduler;
 
     /**
      * Constructs a new {@code SkinAPI} with the specified provider function.
@@ -32,7 +48,44 @@ public class SkinAPI<V> {
      * @param provider the function that provides a {@code Skin} given a {@code Context}
      */
     public SkinAPI(final Function<Context<V>, Skin> provider) {
-        this.provider = provider;
+        this(provider, null);
+    }
+
+    /**
+     * Constructs a new {@code SkinAPI} with the specified provider function.
+     *
+     * @param provider  the function that provides a {@code Skin} given a {@code Context}
+     * @param scheduler the scheduler the provider's requests go through, or null to make them right away
+     * @throws NullPointerException if the provider is null
+     */
+    public SkinAPI(@NotNull final Function<Context<V>, Skin> provider, @Nullable final RequestScheduler scheduler) {
+        this.provider = Objects.requireNonNull(provider, "provider");
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Constructs a new {@code SkinAPI} without a provider function, for subclasses that fetch
+     * their skins some other way by overriding {@link #fetch(Context)}.
+     *
+     * @throws IllegalStateException if the subclass doesn't override {@link #fetch(Context)}
+     */
+    protected SkinAPI() {
+        if (!overridesFetch(this.getClass())) {
+            throw new IllegalStateException(this.getClass().getName() + " has no provider & doesn't override fetch");
+        }
+        this.provider = null;
+        this.scheduler = null;
+    }
+
+    private static boolean overridesFetch(@NotNull final Class<?> type) {
+        for (Class<?> current = type; current != SkinAPI.class; current = current.getSuperclass()) {
+            try {
+                current.getDeclaredMethod("fetch", Context.class);
+                return true;
+            } catch (final NoSuchMethodException ignored) {
+            }
+        }
+        return false;
     }
 
     /**
@@ -42,53 +95,254 @@ public class SkinAPI<V> {
      * @return the fetched {@code Skin}
      */
     public Skin of(@NotNull final V value) {
-        return provider.apply(() -> value);
+        return of(() -> value);
     }
 
     /**
      * Fetches a {@code Skin} using the specified {@code Context}.
+     * <p>
+     * If this {@code SkinAPI} has a {@link RequestScheduler} the fetch never waits for its rate limit,
+     * it fails with a {@link dev.iiahmed.disguise.util.RateLimitedException} instead.
      *
      * @param context the context used to provide a value for fetching the skin
      * @return the fetched {@code Skin}
      */
     public Skin of(@NotNull final Context<V> context) {
+        final Skin local = local(context);
+        if (local != null) {
+            return local;
+        }
+        return this.fetch(context);
+    }
+
+    /**
+     * Fetches a {@code Skin} off the calling thread using the specified value.
+     *
+     * @param value the value used to identify the context, such as a player's {@code UUID}
+     * @return a future of the fetched {@code Skin}, it fails if the fetch does or times out
+     * @see SkinExecutor
+     */
+    public CompletableFuture<Skin> ofAsync(@NotNull final V value) {
+        return ofAsync(() -> value);
+    }
+
+    /**
+     * Fetches a {@code Skin} off the calling thread using the specified {@code Context}.
+     * <p>
+     * If this {@code SkinAPI} has a {@link RequestScheduler} the fetch may wait in its queue, only the
+     * requests themselves are timed out then.
+     *
+     * @param context the context used to provide a value for fetching the skin
+     * @return a future of the fetched {@code Skin}, it fails if the fetch does or times out
+     * @see SkinExecutor
+     */
+    public CompletableFuture<Skin> ofAsync(@NotNull final Context<V> context) {
+        final Skin local = local(context);
+        if (local != null) {
+            return CompletableFuture.completedFuture(local);
+        }
+        if (provider == null) {
+            return SkinExecutor.supply(() -> this.fetch(context));
+        }
+        if (scheduler != null) {
+            return scheduler.submit(() -> provider.apply(context));
+        }
+        return SkinExecutor.supply(() -> provider.apply(context));
+    }
+
+    /**
+     * Fetches a {@code Skin} off the calling thread using the specified {@code Context}.
+     *
+     * @param context the context used to provide a value for fetching the skin
+     * @param timeout the time after which the fetch is given up on
+     * @param unit    the unit of the timeout
+     * @return a future of the fetched {@code Skin}, it fails if the fetch does or times out
+     */
+    public CompletableFuture<Skin> ofAsync(@NotNull final Context<V> context, final long timeout, @NotNull final TimeUnit unit) {
+        final Skin local = local(context);
+        if (local != null) {
+            return CompletableFuture.completedFuture(local);
+        }
+        if (provider == null) {
+            return SkinExecutor.supply(() -> this.fetch(context), timeout, unit);
+        }
+        if (scheduler != null) {
+            return SkinExecutor.timeout(scheduler.submit(() -> provider.apply(context)), timeout, unit);
+        }
+        return SkinExecutor.supply(() -> provider.apply(context), timeout, unit);
+    }
+
+    /**
+     * Fetches a {@code Skin} from the source of this {@code SkinAPI} on the calling thread, without looking
+     * for the skin of an online player first. Subclasses without a provider function override this.
+     *
+     * @param context the context used to provide a value for fetching the skin
+     * @return the fetched {@code Skin}
+     */
+    protected Skin fetch(@NotNull final Context<V> context) {
+        if (scheduler != null) {
+            return scheduler.call(() -> provider.apply(context));
+        }
         return provider.apply(context);
     }
 
+    /**
+     * Sets the resolver that is asked before any request is made for a {@code UUID}, it's set to the
+     * {@link DisguiseProvider#getRealSkin(UUID)} of the provider once it's initialized.
+     *
+     * @param resolver the resolver, it returns null if the skin isn't known locally (null to disable it)
+     */
+    public static void setLocalResolver(@Nullable final Function<UUID, Skin> resolver) {
+        localResolver = resolver;
+    }
+
+    /**
+     * Sets the resolver of the {@code UUID}s of online players by their real name, it's set to the
+     * {@link DisguiseProvider#getOnlineId(String)} of the provider once it's initialized.
+     *
+     * @param resolver the resolver, it returns null if no online player has that real name (null to disable it)
+     */
+    public static void setLocalIdResolver(@Nullable final Function<String, UUID> resolver) {
+        localIdResolver = resolver;
+    }
+
+    /**
+     * Finds a skin without any request, like the skin of an online player
+     *
+     * @param context the context used to provide a value for fetching the skin
+     * @return the skin, or null if it has to be fetched
+     */
+    protected @Nullable Skin local(@NotNull final Context<V> context) {
+        final V value = context.value();
+        return value instanceof UUID ? localSkin((UUID) value) : null;
+    }
+
+    /**
+     * Finds the skin of a {@code UUID} without any request
+     *
+     * @param uuid the {@code UUID} of the player
+     * @return the skin, or null if it has to be fetched
+     */
+    protected static @Nullable Skin localSkin(@NotNull final UUID uuid) {
+        final Function<UUID, Skin> resolver = localResolver;
+        return resolver == null ? null : resolver.apply(uuid);
+    }
+
+    /**
+     * Finds the {@code UUID} of an online player by their real name, nicknames of disguised players don't match
+     *
+     * @param name the real name of the player
+     * @return the {@code UUID}, or null if no online player has that real name
+     */
+    protected static @Nullable UUID localId(@NotNull final String name) {
+        final Function<String, UUID> resolver = localIdResolver;
+        return resolver == null ? null : resolver.apply(name);
+    }
+
+    /**
+     * Wraps this {@code SkinAPI} with a cache, see {@link CachedSkinAPI}.
+     *
+     * @param maximumSize the maximum amount of cached results
+     * @param ttl         the time a fetched skin is kept for
+     * @param unit        the unit of the ttl
+     * @return the cached {@code SkinAPI}
+     */
+    public CachedSkinAPI<V> cached(final int maximumSize, final long ttl, @NotNull final TimeUnit unit) {
+        return new CachedSkinAPI<>(this, maximumSize, ttl, unit);
+    }
+
+    /**
+     * Wraps this {@code SkinAPI} with a store on the disk, see {@link PersistentSkinAPI}.
+     *
+     * @param file   the file the skins are stored in
+     * @param maxAge the age after which a stored skin is fetched again
+     * @param unit   the unit of the max age
+     * @return the persistent {@code SkinAPI}
+     */
+    public PersistentSkinAPI<V> persistent(@NotNull final File file, final long maxAge, @NotNull final TimeUnit unit) {
+        return new PersistentSkinAPI<>(this, file, maxAge, unit);
+    }
+
+    /**
+     * Creates a {@code SkinAPI} that falls back to the next source when one fails, see {@link CompositeSkinAPI}.
+     *
+     * @param timeout the time each source is given before the next one is tried
+     * @param unit    the unit of the timeout
+     * @param sources the sources in order of priority
+     * @return the composite {@code SkinAPI}, it hedges slow asynchronous fetches
+     */
+    @SafeVarargs
+    public static <V> CompositeSkinAPI<V> firstOf(final long timeout, @NotNull final TimeUnit unit, @NotNull final SkinAPI<V>... sources) {
+        return new CompositeSkinAPI<>(timeout, unit, true, sources);
+    }
+
     /**
      * SkinAPI instance for Mojang's skin service.
      * This API fetches skins from Mojang's official session server.
      */
-    public static final SkinAPI<UUID> MOJANG = new SkinAPI<>(context -> {
-        final String id = context.value().toString();
-        final String url = "https://sessionserver.mojang.com/session/minecraft/profile/%uuid%?unsigned=false".replace("%uuid%", id);
-        final JSONObject object = DisguiseUtil.getJSONObject(url);
-        return extractSkinFromJSON(object);
-    });
+    public static final SkinAPI<UUID> MOJANG = mojang("https://sessionserver.mojang.com", RequestScheduler.MOJANG_SESSION);
 
     /**
      * SkinAPI instance for MineTools skin service.
      * This API fetches skins from the MineTools API, a third-party service.
      */
-    public static final SkinAPI<UUID> MINETOOLS = new SkinAPI<>(context -> {
-        final String id = context.value().toString();
-        final String url = "https://api.minetools.eu/profile/%uuid%".replace("%uuid%", id);
-        final JSONObject object = DisguiseUtil.getJSONObject(url);
-        return extractSkinFromJSON((JSONObject) object.get("raw"));
-    });
+    public static final SkinAPI<UUID> MINETOOLS = minetools("https://api.minetools.eu", RequestScheduler.MINETOOLS);
 
     /**
      * SkinAPI instance for MineSkin skin service.
      * This API fetches skins from the MineSkin API, a third-party service.
      */
-    public static final SkinAPI<UUID> MINESKIN = new SkinAPI<>(context -> {
-        final String id = context.value().toString();
-        final String url = "https://api.mineskin.org/get/uuid/%uuid%".replace("%uuid%", id);
-        final JSONObject object = DisguiseUtil.getJSONObject(url);
-        final JSONObject dataObject = (JSONObject) object.get("data");
-        final JSONObject texturesObject = (JSONObject) dataObject.get("texture");
-        return new Skin((String) texturesObject.get("value"), (String) texturesObject.get("signature"));
-    });
+    public static final SkinAPI<UUID> MINESKIN = mineskin("https://api.mineskin.org", RequestScheduler.MINESKIN);
+
+    /**
+     * Creates a {@code SkinAPI} that speaks Mojang's session server API, like {@link #MOJANG}.
+     *
+     * @param baseUrl   the base URL of the server, like {@code https://sessionserver.mojang.com}
+     * @param scheduler the scheduler that keeps the requests under the server's rate limit
+     * @return the new {@code SkinAPI}
+     */
+    public static SkinAPI<UUID> mojang(@NotNull final String baseUrl, @Nullable final RequestScheduler scheduler) {
+        return new SkinAPI<>(context -> {
+            final String id = context.value().toString();
+            final String url = (baseUrl + "/session/minecraft/profile/%uuid%?unsigned=false").replace("%uuid%", id);
+            final JSONObject object = HttpUtil.getJSONObject(url);
+            return extractSkinFromJSON(object);
+        }, scheduler);
+    }
+
+    /**
+     * Creates a {@code SkinAPI} that speaks the MineTools API, like {@link #MINETOOLS}.
+     *
+     * @param baseUrl   the base URL of the server, like {@code https://api.minetools.eu}
+     * @param scheduler the scheduler that keeps the requests under the server's rate limit
+     * @return the new {@code SkinAPI}
+     */
+    public static SkinAPI<UUID> minetools(@NotNull final String baseUrl, @Nullable final RequestScheduler scheduler) {
+        return new SkinAPI<>(context -> {
+            final String id = context.value().toString();
+            final String url = (baseUrl + "/profile/%uuid%").replace("%uuid%", id);
+            final JSONObject object = HttpUtil.getJSONObject(url);
+            return extractSkinFromJSON((JSONObject) object.get("raw"));
+        }, scheduler);
+    }
+
+    /**
+     * Creates a {@code SkinAPI} that speaks the MineSkin API, like {@link #MINESKIN}.
+     *
+     * @param baseUrl   the base URL of the server, like {@code https://api.mineskin.org}
+     * @param scheduler the scheduler that keeps the requests under the server's rate limit
+     * @return the new {@code SkinAPI}
+     */
+    public static SkinAPI<UUID> mineskin(@NotNull final String baseUrl, @Nullable final RequestScheduler scheduler) {
+        return new SkinAPI<>(context -> {
+            final String id = context.value().toString();
+            final String url = (baseUrl + "/get/uuid/%uuid%").replace("%uuid%", id);
+            final JSONObject object = HttpUtil.getJSONObject(url);
+            final JSONObject dataObject = (JSONObject) object.get("data");
+            final JSONObject texturesObject = (JSONObject) dataObject.get("texture");
+            return new Skin((String) texturesObject.get("value"), (String) texturesObject.get("signature"));
+        }, scheduler);
+    }
 
     /**
      * Extracts a {@code Skin} object from a JSON representation.
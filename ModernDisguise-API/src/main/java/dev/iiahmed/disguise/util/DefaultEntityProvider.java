@@ -1,6 +1,7 @@
 package dev.iiahmed.disguise.util;
 
 import dev.iiahmed.disguise.EntityProvider;
+import dev.iiahmed.disguise.util.reflection.ReflectionCache;
 import dev.iiahmed.disguise.util.reflection.Reflections;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.EntityType;
@@ -8,21 +9,31 @@ import org.jetbrains.annotations.NotNull;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
+/**
+ * The default {@link EntityProvider}, it finds the NMS class of an {@link EntityType} the first time that type
+ * is checked or created rather than probing every type while the plugin enables.
+ */
 public class DefaultEntityProvider implements EntityProvider {
 
-    private static final Map<EntityType, Constructor<?>> ENTITIES = new HashMap<>();
-    private static final Map<EntityType, Object> ENTITY_FIELDS = new HashMap<>();
+    private static final Map<EntityType, Resolved> ENTITIES = new EnumMap<>(EntityType.class);
+    private static final Map<String, String> OVERRIDE_NAMES = new HashMap<>();
     private static final boolean SUPPORTED;
     private static int found, living, registered;
 
     private static Method GET_ENTITY;
-    private static Class<?> ENTITY_TYPES, WORLD;
+    private static Class<?> ENTITY_TYPES, WORLD, ENTITY_LIVING;
 
     static {
         final boolean obf = Version.isOrOver(17);
@@ -49,93 +60,173 @@ public class DefaultEntityProvider implements EntityProvider {
         }
 
         SUPPORTED = supported;
-        if (SUPPORTED) {
-            final Map<String, String> overrideNames = new HashMap<String, String>() {
-                {
-                    put("ELDER_GUARDIAN", "GuardianElder");
-                    put("WITHER_SKELETON", "SkeletonWither");
-                    put("STRAY", "SkeletonStray");
-                    put("HUSK", "ZombieHusk");
-                    put("ZOMBIE_HORSE", "HorseZombie");
-                    put("SKELETON_HORSE", "HorseSkeleton");
-                    put("DONKEY", "HorseDonkey");
-                    put("MULE", "HorseMule");
-                    put("ILLUSIONER", "IllagerIllusioner");
-                    put("GIANT", "GiantZombie");
-                    put("ZOMBIFIED_PIGLIN", "PigZombie");
-                    put("MOOSHROOM", "MushroomCow");
-                    put("SNOW_GOLEM", "Snowman");
-                    put("PUFFERFISH", "PufferFish");
-                    put("TRADER_LLAMA", "LlamaTrader");
-                    put("WANDERING_TRADER", "VillagerTrader");
-                }
-            };
-
-            for (final EntityType type : EntityType.values()) {
-                if (!type.isAlive())  {
-                    continue;
-                }
+        ENTITY_LIVING = entityLiving;
 
-                final String name = type.name();
-                final String className;
-                if (overrideNames.containsKey(name)) {
-                    className = overrideNames.get(name);
-                } else {
-                    final StringBuilder builder = new StringBuilder();
-                    boolean cap = true;
-                    for (final char c : name.toCharArray()) {
-                        if (c == '_') {
-                            cap = true;
-                            continue;
-                        }
-                        builder.append(cap ? c : String.valueOf(c).toLowerCase());
-                        cap = false;
-                    }
-                    className = builder.toString();
-                }
-                final Class<?> clazz = findEntity(className);
-                if (clazz == null) {
-                    continue;
-                }
-                found++;
-                if (!entityLiving.isAssignableFrom(clazz)) {
-                    continue;
-                }
-                living++;
-                final Constructor<?> constructor = findConstructor(clazz, type);
-                if (constructor == null) {
-                    ENTITY_FIELDS.remove(type);
-                    continue;
-                }
-                registered++;
-                ENTITIES.put(type, constructor);
-            }
-        }
+        OVERRIDE_NAMES.put("ELDER_GUARDIAN", "GuardianElder");
+        OVERRIDE_NAMES.put("WITHER_SKELETON", "SkeletonWither");
+        OVERRIDE_NAMES.put("STRAY", "SkeletonStray");
+        OVERRIDE_NAMES.put("HUSK", "ZombieHusk");
+        OVERRIDE_NAMES.put("ZOMBIE_HORSE", "HorseZombie");
+        OVERRIDE_NAMES.put("SKELETON_HORSE", "HorseSkeleton");
+        OVERRIDE_NAMES.put("DONKEY", "HorseDonkey");
+        OVERRIDE_NAMES.put("MULE", "HorseMule");
+        OVERRIDE_NAMES.put("ILLUSIONER", "IllagerIllusioner");
+        OVERRIDE_NAMES.put("GIANT", "GiantZombie");
+        OVERRIDE_NAMES.put("ZOMBIFIED_PIGLIN", "PigZombie");
+        OVERRIDE_NAMES.put("MOOSHROOM", "MushroomCow");
+        OVERRIDE_NAMES.put("SNOW_GOLEM", "Snowman");
+        OVERRIDE_NAMES.put("PUFFERFISH", "PufferFish");
+        OVERRIDE_NAMES.put("TRADER_LLAMA", "LlamaTrader");
+        OVERRIDE_NAMES.put("WANDERING_TRADER", "VillagerTrader");
     }
 
     @Override
     public boolean isAvailable() {
-        return SUPPORTED && registered > 0;
+        if (!SUPPORTED) {
+            return false;
+        }
+        // one registered type is enough, there's no need to resolve the rest
+        for (final EntityType type : EntityType.values()) {
+            if (resolve(type).constructor != null) {
+                return true;
+            }
+        }
+        return false;
     }
 
     @Override
     public Object create(final EntityType type, final @NotNull Object world) throws Exception {
-        if (!ENTITIES.containsKey(type)) {
+        final Resolved resolved = resolve(type);
+        final Constructor<?> constructor = resolved.constructor;
+        if (constructor == null) {
             throw new RuntimeException("Creating a not supported entity.");
         }
-        final Constructor<?> constructor = ENTITIES.get(type);
         final Object entity;
         if (constructor.getParameterCount() == 1) {
             entity = constructor.newInstance(world);
         } else {
-            entity = constructor.newInstance(ENTITY_FIELDS.get(type), world);
+            entity = constructor.newInstance(resolved.field, world);
         }
         return entity;
     }
 
     @Override
     public boolean isSupported(final EntityType type) {
-        return ENTITIES.containsKey(type);
+        return type != null && resolve(type).constructor != null;
+    }
+
+    /**
+     * Resolves every living {@link EntityType} in the background, so the first disguise as each type
+     * doesn't have to look its class up.
+     *
+     * @param threads the maximum amount of threads used for the lookups
+     */
+    public void prewarm(final int threads) {
+        if (!SUPPORTED || threads < 1) {
+            return;
+        }
+        // counted before anything is submitted, so the cache is saved exactly once after the last lookup
+        final List<EntityType> living = new ArrayList<>();
+        for (final EntityType type : EntityType.values()) {
+            if (type.isAlive()) {
+                living.add(type);
+            }
+        }
+        if (living.isEmpty()) {
+            return;
+        }
+
+        final AtomicInteger counter = new AtomicInteger();
+        final AtomicInteger remaining = new AtomicInteger(living.size());
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable, "ModernDisguise-EntityResolver-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (final EntityType type : living) {
+            executor.execute(() -> {
+                try {
+                    resolve(type);
+                } finally {
+                    if (remaining.decrementAndGet() == 0) {
+                        ReflectionCache.save();
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Resolves every {@link EntityType} on the calling thread, the ones that aren't alive resolve to nothing right away
+     */
+    private static void resolveAll() {
+        for (final EntityType type : EntityType.values()) {
+            resolve(type);
+        }
+    }
+
+    /**
+     * Looks up the NMS class & constructor of an {@link EntityType} once, then returns the stored result
+     *
+     * @param type the type being resolved
+     * @return the result of the lookup, its constructor is null if the type is NOT supported
+     */
+    private static Resolved resolve(@NotNull final EntityType type) {
+        synchronized (ENTITIES) {
+            final Resolved resolved = ENTITIES.get(type);
+            if (resolved != null) {
+                return resolved;
+            }
+        }
+
+        // the lookups happen outside the lock, so a pre-warm doesn't block the main thread on a slow type
+        final Resolved resolved = SUPPORTED && type.isAlive() ? lookup(type) : Resolved.NONE;
+        synchronized (ENTITIES) {
+            final Resolved present = ENTITIES.get(type);
+            if (present != null) {
+                return present;
+            }
+            ENTITIES.put(type, resolved);
+            if (resolved.clazz != null) {
+                found++;
+                if (ENTITY_LIVING.isAssignableFrom(resolved.clazz)) {
+                    living++;
+                }
+                if (resolved.constructor != null) {
+                    registered++;
+                }
+            }
+            return resolved;
+        }
+    }
+
+    private static Resolved lookup(@NotNull final EntityType type) {
+        final String name = type.name();
+        final String className;
+        if (OVERRIDE_NAMES.containsKey(name)) {
+            className = OVERRIDE_NAMES.get(name);
+        } else {
+            final StringBuilder builder = new StringBuilder();
+            boolean cap = true;
+            for (final char c : name.toCharArray()) {
+                if (c == '_') {
+                    cap = true;
+                    continue;
+                }
+                builder.append(cap ? c : String.valueOf(c).toLowerCase());
+                cap = false;
+            }
+            className = builder.toString();
+        }
+        final Class<?> clazz = findEntity(className);
+        if (clazz == null) {
+            return Resolved.NONE;
+        }
+        if (!ENTITY_LIVING.isAssignableFrom(clazz)) {
+            return new Resolved(clazz, null, null);
+        }
+        return findConstructor(clazz, type);
     }
 
     /**
@@ -145,12 +236,31 @@ public class DefaultEntityProvider implements EntityProvider {
      * @return null if the NMS entity was NOT found
      */
     private static Class<?> findEntity(final String name) {
+        final String key = "entity." + name;
+        if (ReflectionCache.isMissing(key)) {
+            return null;
+        }
+        Class<?> clazz = ReflectionCache.getClass(key);
+        if (clazz == null) {
+            clazz = probeEntity(name);
+            ReflectionCache.putClass(key, clazz);
+        }
+        return clazz;
+    }
+
+    /**
+     * Probes every package & name form an NMS entity could be found at
+     *
+     * @param name the name of the NMS entity
+     * @return null if the NMS entity was NOT found
+     */
+    private static Class<?> probeEntity(final String name) {
         if (Version.isBelow(17)) {
-            final Class<?> firstTry = Reflections.getClass(DisguiseUtil.PREFIX + name);
+            final Class<?> firstTry = findClass(DisguiseUtil.PREFIX + name);
             if (firstTry != null) {
                 return firstTry;
             }
-            return Reflections.getClass(DisguiseUtil.PREFIX + "Entity" + name);
+            return findClass(DisguiseUtil.PREFIX + "Entity" + name);
         }
         for (final String path : new String[]{
                 // animals
@@ -168,12 +278,12 @@ public class DefaultEntityProvider implements EntityProvider {
                 ""
         }) {
             final String additon = path.isEmpty() ? "" : path + ".";
-            final Class<?> firstTry = Reflections.getClass("net.minecraft.world.entity." + additon + name);
+            final Class<?> firstTry = findClass("net.minecraft.world.entity." + additon + name);
             if (firstTry != null) {
                 return firstTry;
             }
 
-            final Class<?> secondTry = Reflections.getClass("net.minecraft.world.entity." + additon + "Entity" + name);
+            final Class<?> secondTry = findClass("net.minecraft.world.entity." + additon + "Entity" + name);
             if (secondTry != null) {
                 return secondTry;
             }
@@ -181,50 +291,113 @@ public class DefaultEntityProvider implements EntityProvider {
         return null;
     }
 
+    /**
+     * Looks a {@link Class} up without initializing it, the entity's static state is only
+     * set up once the server (or a disguise) actually creates one
+     *
+     * @param path the full name of the class
+     * @return null if the {@link Class} was NOT found
+     */
+    private static Class<?> findClass(@NotNull final String path) {
+        try {
+            return Class.forName(path, false, DefaultEntityProvider.class.getClassLoader());
+        } catch (final Throwable ignored) {
+            return null;
+        }
+    }
+
     /**
      * Finds the {@link Constructor} of any NMS entity
      *
      * @param entityClass the class of the NMS entity
-     * @return null if the NMS entity was NOT found
+     * @return the resolved entity, its constructor is null if it was NOT found
      */
-    private static Constructor<?> findConstructor(@NotNull final Class<?> entityClass, final EntityType type) {
+    private static Resolved findConstructor(@NotNull final Class<?> entityClass, final EntityType type) {
         if (Version.isBelow(13)) {
-            return Reflections.getConstructor(entityClass, WORLD);
+            return new Resolved(entityClass, lookupConstructor(entityClass, WORLD), null);
         }
+        final Object field;
         try {
             final Object obj = GET_ENTITY.invoke(null, type.name().toLowerCase(Locale.ENGLISH));
             if (obj == null) {
-                return null;
+                return new Resolved(entityClass, null, null);
             }
             if (Version.is(13)) {
-                ENTITY_FIELDS.put(type, obj);
+                field = obj;
             } else {
                 final Optional<?> o = (Optional<?>) obj;
-                if (o.isPresent()) {
-                    ENTITY_FIELDS.put(type, o.get());
-                } else {
-                    return null;
+                if (!o.isPresent()) {
+                    return new Resolved(entityClass, null, null);
                 }
+                field = o.get();
             }
         } catch (final Exception ignored) {
+            return new Resolved(entityClass, null, null);
+        }
+        return new Resolved(entityClass, lookupConstructor(entityClass, ENTITY_TYPES, WORLD), field);
+    }
+
+    /**
+     * Finds the constructor of an NMS entity, a missing constructor is remembered so it isn't looked up again
+     *
+     * @param entityClass the {@link Class} of the NMS entity
+     * @param parameters  the parameter types of the constructor
+     * @return null if the NMS entity has no such constructor
+     */
+    private static Constructor<?> lookupConstructor(@NotNull final Class<?> entityClass, final Class<?>... parameters) {
+        final String key = "constructor." + entityClass.getName();
+        if (ReflectionCache.isMissing(key)) {
             return null;
         }
-        return Reflections.getConstructor(entityClass, ENTITY_TYPES, WORLD);
+        Constructor<?> constructor = ReflectionCache.getConstructor(key, entityClass);
+        if (constructor == null) {
+            constructor = Reflections.getConstructor(entityClass, parameters);
+            ReflectionCache.putConstructor(key, constructor);
+        }
+        return constructor;
     }
 
     @Override
     public int foundEntities() {
-        return found;
+        resolveAll();
+        synchronized (ENTITIES) {
+            return found;
+        }
     }
 
     @Override
     public int foundLivingEntities() {
-        return living;
+        resolveAll();
+        synchronized (ENTITIES) {
+            return living;
+        }
     }
 
     @Override
     public int supportedEntities() {
-        return registered;
+        resolveAll();
+        synchronized (ENTITIES) {
+            return registered;
+        }
+    }
+
+    /**
+     * The outcome of looking an {@link EntityType} up
+     */
+    private static final class Resolved {
+
+        private static final Resolved NONE = new Resolved(null, null, null);
+
+        private final Class<?> clazz;
+        private final Constructor<?> constructor;
+        private final Object field;
+
+        private Resolved(final Class<?> clazz, final Constructor<?> constructor, final Object field) {
+            this.clazz = clazz;
+            this.constructor = constructor;
+            this.field = field;
+        }
+
     }
 
 }
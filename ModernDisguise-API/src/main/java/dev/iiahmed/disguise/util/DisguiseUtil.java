@@ -7,25 +7,26 @@ import com.mojang.authlib.properties.Property;
 import com.mojang.authlib.properties.PropertyMap;
 import dev.iiahmed.disguise.Skin;
 import dev.iiahmed.disguise.util.reflection.FieldAccessor;
+import dev.iiahmed.disguise.util.reflection.ReflectionCache;
 import dev.iiahmed.disguise.util.reflection.Reflections;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandler;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
 
-import javax.net.ssl.HttpsURLConnection;
-import java.io.IOException;
-import java.lang.reflect.Constructor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.net.URL;
+import java.lang.reflect.Modifier;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 
 @SuppressWarnings({"unchecked", "rawtypes"})
@@ -41,12 +42,14 @@ public final class DisguiseUtil {
      */
     public static final boolean IS_GAME_PROFILE_RECORD;
 
-    // Reflection methods for Record-based GameProfile (authlib 7.0+)
-    private static Method PROFILE_ID_METHOD;      // id() accessor
-    private static Method PROFILE_NAME_ACCESSOR;  // name() accessor for Records
-    private static Method PROFILE_PROPS_METHOD;   // properties() accessor
-    private static Constructor<?> PROFILE_CONSTRUCTOR_3ARG; // GameProfile(UUID, String, PropertyMap)
-    private static Constructor<?> PROPERTY_MAP_CONSTRUCTOR; // PropertyMap(Multimap)
+    // Method handles for Record-based GameProfile (authlib 7.0+), static final so the JIT can inline them
+    private static final MethodHandle PROFILE_ID_METHOD;      // id() accessor
+    private static final MethodHandle PROFILE_NAME_ACCESSOR;  // name() accessor for Records
+    private static final MethodHandle PROFILE_PROPS_METHOD;   // properties() accessor
+    private static final MethodHandle PROFILE_CONSTRUCTOR_3ARG; // GameProfile(UUID, String, PropertyMap)
+    private static final MethodHandle PROPERTY_MAP_CONSTRUCTOR; // PropertyMap(Multimap)
+    // Property is a record since 1.20.2, value() & signature() replace the getters
+    private static final MethodHandle PROPERTY_VALUE, PROPERTY_SIGNATURE;
 
     /**
      * Field reference for modifying the profile name directly (authlib 6.x and earlier).
@@ -62,16 +65,24 @@ public final class DisguiseUtil {
 
     public static final boolean PRIMARY, INJECTION;
 
-    public static FieldAccessor<?> CONNECTION;
-    public static FieldAccessor<?> NETWORK_MANAGER;
-    public static FieldAccessor<Channel> NETWORK_CHANNEL;
+    public static final FieldAccessor<?> CONNECTION;
+    public static final FieldAccessor<?> NETWORK_MANAGER;
+    public static final FieldAccessor<Channel> NETWORK_CHANNEL;
+    // Connection#send(Packet, listener, boolean flush) since 1.20.2, null before
+    private static final MethodHandle NETWORK_SEND;
 
-    private static final Method GET_PROFILE, GET_HANDLE;
+    private static final MethodHandle GET_PROFILE, GET_HANDLE;
     private static final Map PLAYERS_MAP;
+    private static final Map<UUID, Channel> CHANNELS = new ConcurrentHashMap<>();
+    // Folia's Entity#getScheduler & EntityScheduler#run, null on other servers
+    private static final Method GET_SCHEDULER, SCHEDULER_RUN;
 
     static {
         final boolean obf = Version.isOrOver(17);
         Field profileName = null;
+        MethodHandle profileId = null, profileNameAccessor = null, profileProperties = null;
+        MethodHandle profileConstructor = null, propertyMapConstructor = null;
+        MethodHandle propertyValue = null, propertySignature = null;
 
         // Check if GameProfile is a Record using reflection (isRecord() is Java 16+)
         boolean isRecord = false;
@@ -94,8 +105,16 @@ public final class DisguiseUtil {
                 craftPlayer = Class.forName("org.bukkit.craftbukkit.v" + Version.NMS + ".entity.CraftPlayer");
             }
 
-            GET_PROFILE = craftPlayer.getMethod("getProfile");
-            GET_HANDLE = craftPlayer.getMethod("getHandle");
+            final MethodHandles.Lookup lookup = MethodHandles.lookup();
+            GET_PROFILE = lookup.unreflect(craftPlayer.getMethod("getProfile"))
+                    .asType(MethodType.methodType(GameProfile.class, Player.class));
+            GET_HANDLE = lookup.unreflect(craftPlayer.getMethod("getHandle"))
+                    .asType(MethodType.methodType(Object.class, Player.class));
+
+            if (Version.IS_20_R2_PLUS) {
+                propertyValue = lookup.unreflect(Property.class.getMethod("value"));
+                propertySignature = lookup.unreflect(Property.class.getMethod("signature"));
+            }
 
             // Only try to access the name field if GameProfile is NOT a Record
             if (!IS_GAME_PROFILE_RECORD) {
@@ -104,15 +123,16 @@ public final class DisguiseUtil {
             } else {
                 // For Records, set up reflection for accessor methods
                 try {
-                    PROFILE_ID_METHOD = GameProfile.class.getMethod("id");
-                    PROFILE_NAME_ACCESSOR = GameProfile.class.getMethod("name");
-                    PROFILE_PROPS_METHOD = GameProfile.class.getMethod("properties");
+                    profileId = lookup.unreflect(GameProfile.class.getMethod("id"));
+                    profileNameAccessor = lookup.unreflect(GameProfile.class.getMethod("name"));
+                    profileProperties = lookup.unreflect(GameProfile.class.getMethod("properties"))
+                            .asType(MethodType.methodType(Multimap.class, GameProfile.class));
 
                     // Find the 3-arg constructor: GameProfile(UUID, String, PropertyMap)
-                    PROFILE_CONSTRUCTOR_3ARG = GameProfile.class.getConstructor(UUID.class, String.class, PropertyMap.class);
+                    profileConstructor = lookup.unreflectConstructor(GameProfile.class.getConstructor(UUID.class, String.class, PropertyMap.class));
 
                     // Find PropertyMap constructor that takes Multimap
-                    PROPERTY_MAP_CONSTRUCTOR = PropertyMap.class.getConstructor(Multimap.class);
+                    propertyMapConstructor = lookup.unreflectConstructor(PropertyMap.class.getConstructor(Multimap.class));
 
                     Bukkit.getLogger().info("[ModernDisguise] GameProfile Record reflection initialized successfully");
                 } catch (Exception e) {
@@ -126,7 +146,13 @@ public final class DisguiseUtil {
                     );
 
                     // Try to find gameProfile field
-                    PLAYER_PROFILE_FIELD = findGameProfileField(nmsPlayerClass);
+                    PLAYER_PROFILE_FIELD = ReflectionCache.getField("player.profile", GameProfile.class);
+                    if (PLAYER_PROFILE_FIELD == null) {
+                        PLAYER_PROFILE_FIELD = findGameProfileField(nmsPlayerClass);
+                        if (PLAYER_PROFILE_FIELD != null) {
+                            ReflectionCache.putField("player.profile", PLAYER_PROFILE_FIELD);
+                        }
+                    }
                     if (PLAYER_PROFILE_FIELD != null) {
                         PLAYER_PROFILE_FIELD.setAccessible(true);
                         Bukkit.getLogger().info("[ModernDisguise] Found GameProfile field: " + PLAYER_PROFILE_FIELD.getName());
@@ -152,8 +178,18 @@ public final class DisguiseUtil {
         }
 
         PROFILE_NAME = profileName;
+        PROFILE_ID_METHOD = profileId;
+        PROFILE_NAME_ACCESSOR = profileNameAccessor;
+        PROFILE_PROPS_METHOD = profileProperties;
+        PROFILE_CONSTRUCTOR_3ARG = profileConstructor;
+        PROPERTY_MAP_CONSTRUCTOR = propertyMapConstructor;
+        PROPERTY_VALUE = propertyValue;
+        PROPERTY_SIGNATURE = propertySignature;
         PRIMARY = true;
         boolean injection;
+        FieldAccessor<?> connection = null, networkManagerField = null;
+        FieldAccessor<Channel> networkChannel = null;
+        MethodHandle networkSend = null;
         try {
             final Class<?> entityPlayer = Class.forName(
                     (obf ? PREFIX + "level." : PREFIX) + "EntityPlayer"
@@ -165,9 +201,12 @@ public final class DisguiseUtil {
                     (obf ? "net.minecraft.network." : PREFIX) + "NetworkManager"
             );
 
-            CONNECTION = Reflections.getField(entityPlayer, playerConnection);
-            NETWORK_CHANNEL = Reflections.getField(networkManager, Channel.class);
-            NETWORK_MANAGER = Reflections.getField(playerConnection, networkManager);
+            connection = Reflections.getField(entityPlayer, playerConnection);
+            networkChannel = Reflections.getField(networkManager, Channel.class);
+            networkManagerField = Reflections.getField(playerConnection, networkManager);
+            networkSend = findSend(networkManager, Class.forName(
+                    (obf ? "net.minecraft.network.protocol." : PREFIX) + "Packet"
+            ));
             injection = true;
         } catch (final Throwable exception) {
             injection = false;
@@ -175,6 +214,42 @@ public final class DisguiseUtil {
         }
 
         INJECTION = injection;
+        CONNECTION = connection;
+        NETWORK_MANAGER = networkManagerField;
+        NETWORK_CHANNEL = networkChannel;
+        NETWORK_SEND = networkSend;
+
+        Method getScheduler = null, schedulerRun = null;
+        if (Version.IS_FOLIA) {
+            try {
+                getScheduler = org.bukkit.entity.Entity.class.getMethod("getScheduler");
+                schedulerRun = Class.forName("io.papermc.paper.threadedregions.scheduler.EntityScheduler")
+                        .getMethod("run", Plugin.class, Consumer.class, Runnable.class);
+            } catch (final Throwable exception) {
+                Bukkit.getServer().getLogger().log(Level.SEVERE, "Failed to find Folia's entity scheduler", exception);
+            }
+        }
+        GET_SCHEDULER = getScheduler;
+        SCHEDULER_RUN = schedulerRun;
+    }
+
+    /**
+     * Finds the connection's send that lets the flush be deferred, the listener in between is passed as null.
+     */
+    private static @Nullable MethodHandle findSend(@NotNull final Class<?> networkManager, @NotNull final Class<?> packet) {
+        for (final Method method : networkManager.getMethods()) {
+            final Class<?>[] params = method.getParameterTypes();
+            if (Modifier.isStatic(method.getModifiers()) || method.getReturnType() != void.class || params.length != 3
+                    || !params[0].isAssignableFrom(packet) || params[1].isPrimitive() || params[2] != boolean.class) {
+                continue;
+            }
+            try {
+                return MethodHandles.lookup().unreflect(method)
+                        .asType(MethodType.methodType(void.class, Object.class, Object.class, Object.class, boolean.class));
+            } catch (final IllegalAccessException ignored) {
+            }
+        }
+        return null;
     }
 
     /**
@@ -216,8 +291,8 @@ public final class DisguiseUtil {
      */
     public static GameProfile getProfile(@NotNull final Player player) {
         try {
-            return (GameProfile) GET_PROFILE.invoke(player);
-        } catch (final Exception ignored) {
+            return (GameProfile) GET_PROFILE.invokeExact(player);
+        } catch (final Throwable ignored) {
             return null;
         }
     }
@@ -250,9 +325,9 @@ public final class DisguiseUtil {
      */
     public static void register(@NotNull final String name, @NotNull final Player player) {
         try {
-            final Object entityPlayer = GET_HANDLE.invoke(player);
+            final Object entityPlayer = (Object) GET_HANDLE.invokeExact(player);
             PLAYERS_MAP.put(Version.IS_13_R2_PLUS ? name.toLowerCase(Locale.ENGLISH) : name, entityPlayer);
-        } catch (final Exception exception) {
+        } catch (final Throwable exception) {
             Bukkit.getLogger().log(Level.SEVERE, "[ModernDisguise] Couldn't put into players map player: " + player.getName(), exception);
         }
     }
@@ -302,15 +377,138 @@ public final class DisguiseUtil {
     }
 
     /**
-     * @return the {@link Player}'s netty channel
+     * Runs a task on the thread that owns the {@link Player}, the main thread or the player's region thread on Folia
+     *
+     * @param plugin  the plugin the task is scheduled for
+     * @param player  the {@link Player} the task is about
+     * @param task    the task
+     * @param retired ran instead of the task if the player was removed before it could run
+     */
+    public static void runFor(
+            @NotNull final Plugin plugin,
+            @NotNull final Player player,
+            @NotNull final Runnable task,
+            @NotNull final Runnable retired
+    ) {
+        if (SCHEDULER_RUN != null) {
+            try {
+                final Consumer<Object> consumer = scheduled -> task.run();
+                if (SCHEDULER_RUN.invoke(GET_SCHEDULER.invoke(player), plugin, consumer, retired) == null) {
+                    retired.run();
+                }
+            } catch (final Exception exception) {
+                throw new RuntimeException("Failed to schedule a task for " + player.getName(), exception);
+            }
+            return;
+        }
+
+        if (Bukkit.isPrimaryThread()) {
+            task.run();
+            return;
+        }
+        Bukkit.getScheduler().runTask(plugin, task);
+    }
+
+    /**
+     * Resolves the {@link Player}'s netty {@link Channel} once and keeps it until they quit
+     *
+     * @param player the joining {@link Player}
+     */
+    public static void registerChannel(@NotNull final Player player) {
+        final Channel channel = findChannel(player);
+        if (channel != null) {
+            CHANNELS.put(player.getUniqueId(), channel);
+        }
+    }
+
+    /**
+     * Forgets the {@link Player}'s netty {@link Channel}
+     *
+     * @param player the quitting {@link Player}
+     */
+    public static void unregisterChannel(@NotNull final Player player) {
+        CHANNELS.remove(player.getUniqueId());
+    }
+
+    /**
+     * @return the {@link Player}'s netty channel, or null if it couldn't be found
      */
-    private static Channel getChannel(@NotNull final Player player) {
+    public static @Nullable Channel getChannel(@NotNull final Player player) {
+        final Channel cached = CHANNELS.get(player.getUniqueId());
+        if (cached != null && cached.isOpen()) {
+            return cached;
+        }
+
+        // not registered yet (or reconnected), resolve it the slow way
+        final Channel channel = findChannel(player);
+        if (channel != null) {
+            CHANNELS.put(player.getUniqueId(), channel);
+        }
+        return channel;
+    }
+
+    /**
+     * Sends packets to a {@link Player} and flushes once after the last one, through the {@link Player}'s cached channel.
+     * Since 1.20.2 they go through the connection handler of the channel, which keeps them in order with the packets
+     * Paper holds in its connection queue. Before that they're written to the channel on its event loop,
+     * the same way the server's own connection writes them.
+     *
+     * @param player  the {@link Player} receiving the packets
+     * @param packets the sent packets, in order
+     * @return whether the packets were taken, false if the {@link Player}'s channel couldn't be found
+     */
+    public static boolean sendPackets(@NotNull final Player player, @NotNull final Object[] packets) {
+        final Channel channel = INJECTION ? getChannel(player) : null;
+        if (channel == null) {
+            return false;
+        }
+
+        if (NETWORK_SEND == null) {
+            if (channel.eventLoop().inEventLoop()) {
+                write(channel, packets);
+            } else {
+                channel.eventLoop().execute(() -> write(channel, packets));
+            }
+            return true;
+        }
+
+        final ChannelHandler connection = channel.pipeline().get("packet_handler");
+        if (connection == null) {
+            return false;
+        }
+        final int last = packets.length - 1;
+        for (int i = 0; i <= last; i++) {
+            try {
+                NETWORK_SEND.invokeExact((Object) connection, packets[i], (Object) null, i == last);
+            } catch (final Throwable exception) {
+                if (i == 0) {
+                    // nothing is out yet, the server can still send them one by one
+                    return false;
+                }
+                Bukkit.getLogger().log(Level.SEVERE, "[ModernDisguise] Couldn't send packets to player: " + player.getName(), exception);
+                return true;
+            }
+        }
+        return true;
+    }
+
+    private static void write(@NotNull final Channel channel, @NotNull final Object[] packets) {
+        if (!channel.isOpen()) {
+            return;
+        }
+        for (final Object packet : packets) {
+            channel.write(packet, channel.voidPromise());
+        }
+        channel.flush();
+    }
+
+    private static @Nullable Channel findChannel(@NotNull final Player player) {
         try {
-            final Object entityPlayer = GET_HANDLE.invoke(player);
+            final Object entityPlayer = (Object) GET_HANDLE.invokeExact(player);
             final Object connection = CONNECTION.get(entityPlayer);
             final Object networkManager = NETWORK_MANAGER.get(connection);
             return NETWORK_CHANNEL.get(networkManager);
-        } catch (final Exception exception) {
+        } catch (final Throwable exception) {
             Bukkit.getLogger().log(Level.SEVERE, "[ModernDisguise] Couldn't hook into player: " + player.getName(), exception);
             return null;
         }
@@ -318,32 +516,11 @@ public final class DisguiseUtil {
 
     /**
      * @return the parsed {@link JSONObject} of the URL input
+     * @throws HttpStatusException if the response isn't {@code 200 OK}
+     * @see HttpUtil#getJSONObject(String)
      */
     public static JSONObject getJSONObject(@NotNull final String urlString) {
-        try {
-            final Scanner scanner = getScanner(urlString);
-            final StringBuilder builder = new StringBuilder();
-            while (scanner.hasNext()) {
-                builder.append(scanner.next());
-            }
-
-            return (JSONObject) new JSONParser().parse(builder.toString());
-        } catch (final IOException | ParseException exception) {
-            throw new RuntimeException("Failed to Scan/Parse the URL", exception);
-        }
-    }
-
-    private static @NotNull Scanner getScanner(@NotNull String urlString) throws IOException {
-        final URL url = new URL(urlString);
-        final HttpsURLConnection connection = (HttpsURLConnection) url.openConnection();
-        connection.setRequestProperty("User-Agent", "ModernDisguiseAPI/v1.0");
-        connection.setRequestMethod("GET");
-        connection.connect();
-        if (connection.getResponseCode() != 200) {
-            throw new RuntimeException("The used URL doesn't seem to be working (the api is down?) " + urlString);
-        }
-
-        return new Scanner(url.openStream());
+        return HttpUtil.getJSONObject(urlString);
     }
 
     /**
@@ -370,9 +547,9 @@ public final class DisguiseUtil {
         final String textures, signature;
         if (Version.IS_20_R2_PLUS) {
             try {
-                textures = (String) Property.class.getMethod("value").invoke(property);
-                signature = (String) Property.class.getMethod("signature").invoke(property);
-            } catch (NoSuchMethodException | InvocationTargetException | IllegalAccessException e) {
+                textures = (String) PROPERTY_VALUE.invokeExact(property);
+                signature = (String) PROPERTY_SIGNATURE.invokeExact(property);
+            } catch (final Throwable e) {
                 throw new RuntimeException(e);
             }
         } else {
@@ -393,8 +570,8 @@ public final class DisguiseUtil {
     public static @NotNull UUID getProfileId(@NotNull final GameProfile profile) {
         if (IS_GAME_PROFILE_RECORD && PROFILE_ID_METHOD != null) {
             try {
-                return (UUID) PROFILE_ID_METHOD.invoke(profile);
-            } catch (Exception e) {
+                return (UUID) PROFILE_ID_METHOD.invokeExact(profile);
+            } catch (Throwable e) {
                 throw new RuntimeException("Failed to get profile ID via reflection", e);
             }
         } else {
@@ -411,8 +588,8 @@ public final class DisguiseUtil {
     public static @NotNull String getProfileName(@NotNull final GameProfile profile) {
         if (IS_GAME_PROFILE_RECORD && PROFILE_NAME_ACCESSOR != null) {
             try {
-                return (String) PROFILE_NAME_ACCESSOR.invoke(profile);
-            } catch (Exception e) {
+                return (String) PROFILE_NAME_ACCESSOR.invokeExact(profile);
+            } catch (Throwable e) {
                 throw new RuntimeException("Failed to get profile name via reflection", e);
             }
         } else {
@@ -429,8 +606,8 @@ public final class DisguiseUtil {
     public static @NotNull Multimap<String, Property> getProfileProperties(@NotNull final GameProfile profile) {
         if (IS_GAME_PROFILE_RECORD && PROFILE_PROPS_METHOD != null) {
             try {
-                return (Multimap<String, Property>) PROFILE_PROPS_METHOD.invoke(profile);
-            } catch (Exception e) {
+                return (Multimap<String, Property>) (Multimap) PROFILE_PROPS_METHOD.invokeExact(profile);
+            } catch (Throwable e) {
                 throw new RuntimeException("Failed to get profile properties via reflection", e);
             }
         } else {
@@ -503,10 +680,10 @@ public final class DisguiseUtil {
         if (IS_GAME_PROFILE_RECORD && PROFILE_CONSTRUCTOR_3ARG != null && PROPERTY_MAP_CONSTRUCTOR != null) {
             try {
                 // Create PropertyMap from Multimap
-                PropertyMap propertyMap = (PropertyMap) PROPERTY_MAP_CONSTRUCTOR.newInstance(properties);
+                PropertyMap propertyMap = (PropertyMap) PROPERTY_MAP_CONSTRUCTOR.invokeExact((Multimap) properties);
                 // Create GameProfile with 3-arg constructor
-                return (GameProfile) PROFILE_CONSTRUCTOR_3ARG.newInstance(uuid, name, propertyMap);
-            } catch (Exception e) {
+                return (GameProfile) PROFILE_CONSTRUCTOR_3ARG.invokeExact(uuid, name, propertyMap);
+            } catch (Throwable e) {
                 throw new RuntimeException("Failed to create GameProfile via reflection", e);
             }
         } else {
@@ -532,10 +709,10 @@ public final class DisguiseUtil {
         }
 
         try {
-            final Object entityPlayer = GET_HANDLE.invoke(player);
+            final Object entityPlayer = (Object) GET_HANDLE.invokeExact(player);
             PLAYER_PROFILE_FIELD.set(entityPlayer, newProfile);
             return true;
-        } catch (final Exception exception) {
+        } catch (final Throwable exception) {
             Bukkit.getLogger().log(Level.SEVERE, "[ModernDisguise] Failed to replace GameProfile for " + player.getName(), exception);
             return false;
         }
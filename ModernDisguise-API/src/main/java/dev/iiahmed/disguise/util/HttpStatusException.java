@@ -0,0 +1,65 @@
+package dev.iiahmed.disguise.util;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Thrown when a skin service answers with anything other than {@code 200 OK}.
+ */
+@SuppressWarnings("unused")
+public class HttpStatusException extends RuntimeException {
+
+    private final String url;
+    private final int status;
+    private final long retryAfter;
+
+    /**
+     * @param url        the requested URL
+     * @param status     the HTTP status code of the response
+     * @param retryAfter the delay the service asked for in milliseconds, or -1 if it didn't
+     */
+    public HttpStatusException(@NotNull final String url, final int status, final long retryAfter) {
+        this("The used URL doesn't seem to be working (the api is down?) " + url + " (HTTP " + status + ")", url, status, retryAfter);
+    }
+
+    /**
+     * @param message    the detail message
+     * @param url        the requested URL
+     * @param status     the HTTP status code of the response
+     * @param retryAfter the delay the service asked for in milliseconds, or -1 if it didn't
+     */
+    protected HttpStatusException(@NotNull final String message, @NotNull final String url, final int status, final long retryAfter) {
+        super(message);
+        this.url = url;
+        this.status = status;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return the requested URL
+     */
+    public @NotNull String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return the HTTP status code of the response
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the delay the service asked for before the next request in milliseconds, or -1 if it didn't
+     */
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * @return true if the service is rate limiting us (429) or is temporarily unavailable (503)
+     */
+    public boolean isThrottled() {
+        return status == 429 || status == 503;
+    }
+
+}
@@ -0,0 +1,113 @@
+package dev.iiahmed.disguise.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The JSON requests made to the skin services, kept apart from {@link DisguiseUtil} so they don't need a server.
+ */
+public final class HttpUtil {
+
+    private static final int HTTP_TIMEOUT = 5000;
+
+    private HttpUtil() {
+    }
+
+    /**
+     * @return the parsed {@link JSONObject} of the URL input
+     * @throws HttpStatusException if the response isn't {@code 200 OK}
+     */
+    public static JSONObject getJSONObject(@NotNull final String urlString) {
+        return (JSONObject) request(urlString, null);
+    }
+
+    /**
+     * Posts a JSON body to the URL
+     *
+     * @param urlString the URL
+     * @param body      the JSON body
+     * @return the parsed JSON response, a {@link JSONObject} or a {@link org.json.simple.JSONArray}
+     * @throws HttpStatusException if the response isn't {@code 200 OK}
+     */
+    public static Object postJSON(@NotNull final String urlString, @NotNull final String body) {
+        return request(urlString, body);
+    }
+
+    private static Object request(@NotNull final String urlString, @Nullable final String body) {
+        try {
+            final HttpURLConnection connection = (HttpURLConnection) new URL(urlString).openConnection();
+            connection.setRequestProperty("User-Agent", "ModernDisguiseAPI/v1.0");
+            connection.setRequestProperty("Accept", "application/json");
+            connection.setConnectTimeout(HTTP_TIMEOUT);
+            connection.setReadTimeout(HTTP_TIMEOUT);
+            if (body == null) {
+                connection.setRequestMethod("GET");
+            } else {
+                final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+                connection.setRequestMethod("POST");
+                connection.setRequestProperty("Content-Type", "application/json");
+                connection.setFixedLengthStreamingMode(bytes.length);
+                connection.setDoOutput(true);
+                try (final OutputStream output = connection.getOutputStream()) {
+                    output.write(bytes);
+                }
+            }
+
+            final int status = connection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                // the body has to be read to the end for the connection to be kept alive
+                drain(connection.getErrorStream());
+                drain(status < 400 ? connection.getInputStream() : null);
+                throw new HttpStatusException(urlString, status, getRetryAfter(connection));
+            }
+
+            // the response is parsed while it's being read, from the same request the status came with
+            try (final Reader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+                return new JSONParser().parse(reader);
+            }
+        } catch (final IOException | ParseException exception) {
+            throw new RuntimeException("Failed to Scan/Parse the URL", exception);
+        }
+    }
+
+    private static long getRetryAfter(@NotNull final HttpURLConnection connection) {
+        final String value = connection.getHeaderField("Retry-After");
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(value.trim()));
+        } catch (final NumberFormatException ignored) {
+            final long date = connection.getHeaderFieldDate("Retry-After", -1);
+            return date == -1 ? -1 : Math.max(0, date - System.currentTimeMillis());
+        }
+    }
+
+    private static void drain(@Nullable final InputStream stream) {
+        if (stream == null) {
+            return;
+        }
+        try (final InputStream input = stream) {
+            final byte[] buffer = new byte[1024];
+            while (input.read(buffer) != -1) {
+                // discarded
+            }
+        } catch (final IOException ignored) {
+        }
+    }
+
+}
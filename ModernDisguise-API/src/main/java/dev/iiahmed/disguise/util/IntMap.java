@@ -0,0 +1,123 @@
+package dev.iiahmed.disguise.util;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An immutable open addressing map with primitive {@code int} keys.
+ * <p>
+ * Lookups never box nor lock, every modification returns a new map so instances can be
+ * published through a single volatile field and read from any thread.
+ *
+ * @param <V> the type of the mapped values
+ */
+@SuppressWarnings("unchecked")
+public final class IntMap<V> {
+
+    private static final IntMap<?> EMPTY = new IntMap<>(new int[0], new Object[0], 0);
+
+    private final int[] keys;
+    private final Object[] values;
+    private final int size;
+
+    private IntMap(final int[] keys, final Object[] values, final int size) {
+        this.keys = keys;
+        this.values = values;
+        this.size = size;
+    }
+
+    /**
+     * @return an empty {@link IntMap}
+     */
+    public static <V> IntMap<V> empty() {
+        return (IntMap<V>) EMPTY;
+    }
+
+    /**
+     * @param key the key being looked up
+     * @return the value mapped to the key, or null if there's none
+     */
+    public @Nullable V get(final int key) {
+        if (size == 0) {
+            return null;
+        }
+        final int mask = keys.length - 1;
+        int index = mix(key) & mask;
+        Object value;
+        while ((value = values[index]) != null) {
+            if (keys[index] == key) {
+                return (V) value;
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * @return the amount of mapped keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return a copy of this map with the key mapped to the value
+     */
+    public IntMap<V> with(final int key, final V value) {
+        if (value == null) {
+            return without(key);
+        }
+        final boolean present = get(key) != null;
+        final IntMap<V> map = allocate(present ? size : size + 1);
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null && keys[i] != key) {
+                map.insert(keys[i], values[i]);
+            }
+        }
+        map.insert(key, value);
+        return map;
+    }
+
+    /**
+     * @return a copy of this map without the key
+     */
+    public IntMap<V> without(final int key) {
+        if (get(key) == null) {
+            return this;
+        }
+        if (size == 1) {
+            return empty();
+        }
+        final IntMap<V> map = allocate(size - 1);
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null && keys[i] != key) {
+                map.insert(keys[i], values[i]);
+            }
+        }
+        return map;
+    }
+
+    private void insert(final int key, final Object value) {
+        final int mask = keys.length - 1;
+        int index = mix(key) & mask;
+        while (values[index] != null) {
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        values[index] = value;
+    }
+
+    private static <V> IntMap<V> allocate(final int size) {
+        // keep the load factor at or under 0.5
+        int capacity = 2;
+        while (capacity < size * 2) {
+            capacity <<= 1;
+        }
+        return new IntMap<>(new int[capacity], new Object[capacity], size);
+    }
+
+    private static int mix(final int key) {
+        final int hash = key * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+}
@@ -0,0 +1,79 @@
+package dev.iiahmed.disguise.util;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * A batch of packets that is sent to a {@link Player} at once and flushed a single time,
+ * instead of flushing (and waking up the event loop) once per packet.
+ * <p>
+ * The packets go through the {@link Player}'s cached channel, see {@link DisguiseUtil#sendPackets(Player, Object[])}
+ * for how they're kept in order with the packets the server sends itself.
+ */
+public final class PacketBatch {
+
+    private final BiConsumer<Player, Object> fallback;
+    private final List<Object> packets;
+    private Object[] array;
+
+    /**
+     * @param fallback sends a single packet through the server, used if the {@link Player}'s channel is unavailable
+     * @param expected the expected amount of packets
+     */
+    public PacketBatch(@NotNull final BiConsumer<Player, Object> fallback, final int expected) {
+        this.fallback = fallback;
+        this.packets = new ArrayList<>(expected);
+    }
+
+    /**
+     * Adds a packet to the end of this batch
+     *
+     * @param packet the added packet
+     */
+    public PacketBatch add(@NotNull final Object packet) {
+        this.packets.add(packet);
+        this.array = null;
+        return this;
+    }
+
+    /**
+     * Sends every packet of this batch to the {@link Player}, then flushes once.
+     *
+     * @param target the {@link Player} receiving the packets
+     */
+    public void send(@NotNull final Player target) {
+        if (packets.isEmpty()) {
+            return;
+        }
+
+        if (array == null) {
+            array = packets.toArray();
+        }
+        if (!DisguiseUtil.sendPackets(target, array)) {
+            for (final Object packet : array) {
+                fallback.accept(target, packet);
+            }
+        }
+    }
+
+    /**
+     * Sends this batch to every online {@link Player} that can see a {@link Player}, filtered
+     * the same way the server filters its own tab list broadcasts.
+     *
+     * @param about the {@link Player} the packets are about
+     * @param self  whether the {@link Player} the packets are about receives them too
+     */
+    public void broadcast(@NotNull final Player about, final boolean self) {
+        for (final Player viewer : Bukkit.getOnlinePlayers()) {
+            if (viewer == about ? self : viewer.canSee(about)) {
+                this.send(viewer);
+            }
+        }
+    }
+
+}
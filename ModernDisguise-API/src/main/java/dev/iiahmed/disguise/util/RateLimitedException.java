@@ -0,0 +1,20 @@
+package dev.iiahmed.disguise.util;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Thrown by {@link RequestScheduler#call(java.util.function.Supplier)} when a request can't be made right away,
+ * it's never sent to the service. It counts as a throttled (HTTP 429) response so callers can treat both alike.
+ */
+@SuppressWarnings("unused")
+public final class RateLimitedException extends HttpStatusException {
+
+    /**
+     * @param service    the name of the rate limited service
+     * @param retryAfter the milliseconds until a request might be made
+     */
+    public RateLimitedException(@NotNull final String service, final long retryAfter) {
+        super("The rate limit of " + service + " is reached, retry in " + retryAfter + "ms", service, 429, retryAfter);
+    }
+
+}
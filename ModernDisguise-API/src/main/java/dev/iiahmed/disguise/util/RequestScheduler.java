@@ -0,0 +1,244 @@
+package dev.iiahmed.disguise.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the requests made to a single web service under its rate limit.
+ * <p>
+ * Requests take a token from a bucket that refills at a fixed rate, queued requests without a token wait for one.
+ * A queued request that is rate limited (HTTP 429) or hits an unavailable service (HTTP 5xx) is retried, after the
+ * {@code Retry-After} the service asked for or else after an exponential backoff, and the whole queue is paused
+ * for that time as well. Requests made on the calling thread never wait, they fail right away instead.
+ */
+@SuppressWarnings("unused")
+public final class RequestScheduler {
+
+    /**
+     * The scheduler of Mojang's session server, which allows around 600 requests per 10 minutes
+     */
+    public static final RequestScheduler MOJANG_SESSION = new RequestScheduler("sessionserver.mojang.com", 10, 1, TimeUnit.SECONDS);
+    /**
+     * The scheduler of Mojang's profile API (name to {@code UUID} lookups)
+     */
+    public static final RequestScheduler MOJANG_API = new RequestScheduler("api.mojang.com", 10, 1, TimeUnit.SECONDS);
+    /**
+     * The scheduler of the MineTools API
+     */
+    public static final RequestScheduler MINETOOLS = new RequestScheduler("api.minetools.eu", 10, 1, TimeUnit.SECONDS);
+    /**
+     * The scheduler of the MineSkin API
+     */
+    public static final RequestScheduler MINESKIN = new RequestScheduler("api.mineskin.org", 5, 1, TimeUnit.SECONDS);
+
+    private static final long BASE_BACKOFF = 500L;
+    private static final long MAX_BACKOFF = TimeUnit.SECONDS.toMillis(30);
+
+    private final String name;
+    private final int capacity;
+    private final double tokensPerMilli;
+    private final Deque<Task<?>> queue = new ArrayDeque<>();
+    private volatile int maxRetries = 4;
+    private double tokens;
+    private long lastRefill = System.currentTimeMillis(), pausedUntil;
+    private ScheduledFuture<?> drainTask;
+    private long drainAt;
+
+    /**
+     * Constructs a new {@code RequestScheduler}.
+     *
+     * @param name     the name of the service, used in messages only
+     * @param capacity the amount of requests that can be made at once after the service wasn't used for a while
+     * @param rate     the amount of requests the bucket refills per period
+     * @param period   the period of the rate
+     */
+    public RequestScheduler(@NotNull final String name, final int capacity, final int rate, @NotNull final TimeUnit period) {
+        if (capacity < 1 || rate < 1) {
+            throw new IllegalArgumentException("The capacity & rate must be at least 1");
+        }
+        this.name = name;
+        this.capacity = capacity;
+        this.tokensPerMilli = rate / (double) period.toMillis(1);
+        this.tokens = capacity;
+    }
+
+    /**
+     * @return the name of the service
+     */
+    public @NotNull String getName() {
+        return name;
+    }
+
+    /**
+     * Sets how many times a rate limited request is retried before its failure is passed on
+     *
+     * @param maxRetries the amount of retries, 0 to never retry
+     */
+    public void setMaxRetries(final int maxRetries) {
+        this.maxRetries = Math.max(0, maxRetries);
+    }
+
+    /**
+     * @return the amount of requests waiting for a token
+     */
+    public synchronized int getQueued() {
+        return queue.size();
+    }
+
+    /**
+     * Queues a blocking request, it runs on the {@link SkinExecutor} once it gets a token.
+     *
+     * @param request the request
+     * @return a future of the request's result
+     */
+    public <T> @NotNull CompletableFuture<T> submit(@NotNull final Supplier<T> request) {
+        final Task<T> task = new Task<>(request);
+        synchronized (this) {
+            queue.addLast(task);
+        }
+        this.drain();
+        return task.future;
+    }
+
+    /**
+     * Runs a request on the calling thread if a token is available right away, it's never retried & never waits
+     * since the calling thread is often the server's, use {@link #submit(Supplier)} to wait for the rate limit.
+     * A rate limited response still pauses the queued requests.
+     *
+     * @param request the request
+     * @return the request's result
+     * @throws RateLimitedException if there is no token, with the wait as its retry after
+     */
+    public <T> T call(@NotNull final Supplier<T> request) {
+        final long wait = this.tryAcquire();
+        if (wait > 0) {
+            throw new RateLimitedException(name, wait);
+        }
+        try {
+            return request.get();
+        } catch (final HttpStatusException exception) {
+            if (isRetryable(exception)) {
+                this.pause(exception, 0);
+            }
+            throw exception;
+        }
+    }
+
+    /**
+     * Takes a token if the service isn't paused & the bucket has one
+     *
+     * @return 0 if a token was taken, otherwise the milliseconds until one might be available
+     */
+    private synchronized long tryAcquire() {
+        final long now = System.currentTimeMillis();
+        if (now < pausedUntil) {
+            return pausedUntil - now;
+        }
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerMilli);
+        lastRefill = now;
+        if (tokens >= 1) {
+            tokens--;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((1 - tokens) / tokensPerMilli));
+    }
+
+    /**
+     * Pauses the service after a rate limited response
+     *
+     * @return the milliseconds the service is paused for
+     */
+    private synchronized long pause(@NotNull final HttpStatusException exception, final int attempt) {
+        final long delay = exception.getRetryAfter() >= 0 ?
+                exception.getRetryAfter() :
+                Math.min(MAX_BACKOFF, BASE_BACKOFF << Math.min(attempt, 16));
+        pausedUntil = Math.max(pausedUntil, System.currentTimeMillis() + delay);
+        return delay;
+    }
+
+    /**
+     * Hands every queued request that can get a token to the executor, then waits for the next token
+     */
+    private void drain() {
+        while (true) {
+            final Task<?> task;
+            synchronized (this) {
+                if (queue.isEmpty()) {
+                    return;
+                }
+                final long wait = this.tryAcquire();
+                if (wait > 0) {
+                    this.scheduleDrain(wait);
+                    return;
+                }
+                task = queue.pollFirst();
+            }
+            try {
+                SkinExecutor.getExecutor().execute(() -> this.run(task));
+            } catch (final RejectedExecutionException exception) {
+                // the executor is shut down or saturated, nothing would ever complete the task
+                task.future.completeExceptionally(exception);
+            }
+        }
+    }
+
+    private <T> void run(@NotNull final Task<T> task) {
+        try {
+            task.future.complete(task.request.get());
+        } catch (final HttpStatusException exception) {
+            if (!isRetryable(exception) || task.attempt >= maxRetries) {
+                task.future.completeExceptionally(exception);
+                return;
+            }
+            final long delay = this.pause(exception, task.attempt++);
+            synchronized (this) {
+                queue.addFirst(task);
+                this.scheduleDrain(delay);
+            }
+        } catch (final Throwable throwable) {
+            task.future.completeExceptionally(throwable);
+        }
+    }
+
+    private synchronized void scheduleDrain(final long delay) {
+        final long at = System.currentTimeMillis() + delay;
+        if (drainTask != null && !drainTask.isDone()) {
+            if (drainAt <= at) {
+                return;
+            }
+            drainTask.cancel(false);
+        }
+        drainAt = at;
+        drainTask = SkinExecutor.schedule(() -> {
+            // the running task doesn't count as scheduled, or the drain couldn't schedule the next one
+            synchronized (this) {
+                drainTask = null;
+            }
+            this.drain();
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private static boolean isRetryable(@NotNull final HttpStatusException exception) {
+        return exception.isThrottled() || exception.getStatus() >= 500;
+    }
+
+    private static final class Task<T> {
+
+        private final Supplier<T> request;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private int attempt;
+
+        private Task(final Supplier<T> request) {
+            this.request = request;
+        }
+
+    }
+
+}
@@ -0,0 +1,244 @@
+package dev.iiahmed.disguise.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.reflect.Method;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs the blocking skin lookups of {@link dev.iiahmed.disguise.SkinAPI} off the server thread.
+ * <p>
+ * Lookups run on virtual threads when the runtime supports them (Java 21+) and on a small daemon pool otherwise,
+ * either way no more than {@link #getParallelism()} of them run at once and every lookup is failed with a
+ * {@link TimeoutException} once it takes longer than {@link #getTimeout()} milliseconds.
+ */
+@SuppressWarnings("unused")
+public final class SkinExecutor {
+
+    private static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1, runnable -> {
+        final Thread thread = new Thread(runnable, "ModernDisguise-SkinTimeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final AtomicInteger THREADS = new AtomicInteger();
+
+    private static volatile int parallelism = 4;
+    private static volatile long timeout = 5000L;
+    private static volatile Executor executor;
+
+    static {
+        TIMER.setRemoveOnCancelPolicy(true);
+    }
+
+    private SkinExecutor() {
+    }
+
+    /**
+     * @return the maximum amount of skin lookups that run at once
+     */
+    public static int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the maximum amount of skin lookups that run at once, it only applies to the default executor.
+     *
+     * @param parallelism the new limit, at least 1
+     */
+    public static synchronized void setParallelism(final int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        SkinExecutor.parallelism = parallelism;
+        executor = null;
+    }
+
+    /**
+     * @return the default timeout of a skin lookup in milliseconds
+     */
+    public static long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the default timeout of a skin lookup
+     *
+     * @param timeout the new timeout
+     * @param unit    the unit of the timeout
+     */
+    public static void setTimeout(final long timeout, @NotNull final TimeUnit unit) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("Timeout must be positive");
+        }
+        SkinExecutor.timeout = unit.toMillis(timeout);
+    }
+
+    /**
+     * Replaces the executor skin lookups run on, the parallelism limit is up to the given executor.
+     *
+     * @param executor the new executor
+     */
+    public static synchronized void setExecutor(@NotNull final Executor executor) {
+        SkinExecutor.executor = executor;
+    }
+
+    /**
+     * @return the executor skin lookups run on
+     */
+    public static @NotNull Executor getExecutor() {
+        Executor current = executor;
+        if (current == null) {
+            synchronized (SkinExecutor.class) {
+                current = executor;
+                if (current == null) {
+                    current = executor = createExecutor(parallelism);
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Runs a blocking lookup on the skin executor with the default timeout
+     *
+     * @param supplier the lookup
+     * @return a future of the lookup's result
+     */
+    public static <T> @NotNull CompletableFuture<T> supply(@NotNull final Supplier<T> supplier) {
+        return supply(supplier, timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs a blocking lookup on the skin executor
+     *
+     * @param supplier the lookup
+     * @param timeout  the time after which the returned future fails with a {@link TimeoutException}
+     * @param unit     the unit of the timeout
+     * @return a future of the lookup's result
+     */
+    public static <T> @NotNull CompletableFuture<T> supply(
+            @NotNull final Supplier<T> supplier,
+            final long timeout,
+            @NotNull final TimeUnit unit
+    ) {
+        return timeout(CompletableFuture.supplyAsync(supplier, getExecutor()), timeout, unit);
+    }
+
+    /**
+     * Fails a future with a {@link TimeoutException} if it isn't completed in time
+     *
+     * @param future  the future
+     * @param timeout the time after which the future fails
+     * @param unit    the unit of the timeout
+     * @return the same future
+     */
+    public static <T> @NotNull CompletableFuture<T> timeout(
+            @NotNull final CompletableFuture<T> future,
+            final long timeout,
+            @NotNull final TimeUnit unit
+    ) {
+        if (future.isDone()) {
+            return future;
+        }
+        final ScheduledFuture<?> timeoutTask = TIMER.schedule(() -> future.completeExceptionally(
+                new TimeoutException("The skin lookup took longer than " + unit.toMillis(timeout) + "ms")
+        ), timeout, unit);
+        future.whenComplete((result, throwable) -> timeoutTask.cancel(false));
+        return future;
+    }
+
+    /**
+     * Runs a short task after a delay on the thread that times skin lookups out, the task must not block
+     *
+     * @param task  the task
+     * @param delay the delay
+     * @param unit  the unit of the delay
+     * @return the scheduled task, cancel it if it's no longer needed
+     */
+    public static @NotNull ScheduledFuture<?> schedule(@NotNull final Runnable task, final long delay, @NotNull final TimeUnit unit) {
+        return TIMER.schedule(task, delay, unit);
+    }
+
+    private static Executor createExecutor(final int parallelism) {
+        try {
+            // Java 21+, every lookup gets its own virtual thread
+            final Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return new LimitedExecutor((Executor) method.invoke(null), parallelism);
+        } catch (final Throwable ignored) {
+        }
+
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                parallelism, parallelism,
+                30L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    final Thread thread = new Thread(runnable, "ModernDisguise-Skin-" + THREADS.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Hands at most {@code limit} tasks to the delegate at once, the rest wait in a queue.
+     */
+    private static final class LimitedExecutor implements Executor {
+
+        private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger running = new AtomicInteger();
+        private final Executor delegate;
+        private final int limit;
+
+        private LimitedExecutor(final Executor delegate, final int limit) {
+            this.delegate = delegate;
+            this.limit = limit;
+        }
+
+        @Override
+        public void execute(@NotNull final Runnable command) {
+            queue.add(command);
+            drain();
+        }
+
+        private void drain() {
+            while (!queue.isEmpty()) {
+                final int current = running.get();
+                if (current >= limit) {
+                    return;
+                }
+                if (!running.compareAndSet(current, current + 1)) {
+                    continue;
+                }
+                final Runnable task = queue.poll();
+                if (task == null) {
+                    running.decrementAndGet();
+                    continue;
+                }
+                delegate.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        running.decrementAndGet();
+                        drain();
+                    }
+                });
+            }
+        }
+
+    }
+
+}
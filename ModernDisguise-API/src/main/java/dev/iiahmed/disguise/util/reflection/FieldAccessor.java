@@ -17,6 +17,16 @@ public interface FieldAccessor<T> {
      */
     T get(final Object target);
 
+    /**
+     * Retrieve the content of a primitive int field without boxing it.
+     *
+     * @param target - the target object, or NULL for a static field.
+     * @return The value of the field.
+     */
+    default int getInt(final Object target) {
+        return ((Number) get(target)).intValue();
+    }
+
     /**
      * Set the content of a field.
      *
@@ -0,0 +1,114 @@
+package dev.iiahmed.disguise.util.reflection;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * A {@link FieldAccessor} backed by {@link MethodHandle}s, which (unlike {@link Field#get(Object)})
+ * skip the access checks on every call. The handles are instance fields so the JIT can't fold them
+ * into constants, hot paths use {@link Reflections#getGetter(Class, Class)} for that instead.
+ *
+ * @param <T> - field type.
+ */
+final class HandleFieldAccessor<T> implements FieldAccessor<T> {
+
+    private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType INT_GETTER = MethodType.methodType(int.class, Object.class);
+    private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final Field field;
+    private final MethodHandle getter, intGetter, setter;
+
+    private HandleFieldAccessor(
+            @NotNull final Field field,
+            @NotNull final MethodHandle getter,
+            @Nullable final MethodHandle intGetter,
+            @Nullable final MethodHandle setter
+    ) {
+        this.field = field;
+        this.getter = getter;
+        this.intGetter = intGetter;
+        this.setter = setter;
+    }
+
+    /**
+     * @param field an accessible instance field
+     * @return the accessor of the field, or null if no {@link MethodHandle} could be made for it
+     */
+    static <T> @Nullable FieldAccessor<T> of(@NotNull final Field field) {
+        if (Modifier.isStatic(field.getModifiers())) {
+            return null;
+        }
+
+        final MethodHandles.Lookup lookup = MethodHandles.lookup();
+        final MethodHandle getter;
+        try {
+            getter = lookup.unreflectGetter(field);
+        } catch (final IllegalAccessException | RuntimeException e) {
+            return null;
+        }
+
+        MethodHandle setter;
+        try {
+            setter = lookup.unreflectSetter(field).asType(SETTER);
+        } catch (final IllegalAccessException | RuntimeException e) {
+            // final fields can't always be written through a handle, Field#set is used for those
+            setter = null;
+        }
+
+        return new HandleFieldAccessor<>(
+                field,
+                getter.asType(GETTER),
+                field.getType() == int.class ? getter.asType(INT_GETTER) : null,
+                setter
+        );
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(final Object target) {
+        try {
+            return (T) (Object) getter.invokeExact(target);
+        } catch (final Throwable e) {
+            throw new RuntimeException("Cannot access reflection.", e);
+        }
+    }
+
+    @Override
+    public int getInt(final Object target) {
+        if (intGetter == null) {
+            return FieldAccessor.super.getInt(target);
+        }
+        try {
+            return (int) intGetter.invokeExact(target);
+        } catch (final Throwable e) {
+            throw new RuntimeException("Cannot access reflection.", e);
+        }
+    }
+
+    @Override
+    public void set(final Object target, final Object value) {
+        try {
+            if (setter == null) {
+                field.set(target, value);
+            } else {
+                setter.invokeExact(target, value);
+            }
+        } catch (final Throwable e) {
+            throw new RuntimeException("Cannot access reflection.", e);
+        }
+    }
+
+    @Override
+    public boolean hasField(final Object target) {
+        // target instanceof DeclaringClass
+        return field.getDeclaringClass().isAssignableFrom(target.getClass());
+    }
+
+}
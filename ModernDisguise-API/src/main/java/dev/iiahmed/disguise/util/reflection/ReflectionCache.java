@@ -0,0 +1,332 @@
+package dev.iiahmed.disguise.util.reflection;
+
+import dev.iiahmed.disguise.util.Version;
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+/**
+ * Remembers the outcome of reflective lookups that have to probe several names (class names, field names)
+ * in a small file inside the plugin's data folder, so later startups on the same server build can go straight
+ * to the right member.
+ * <p>
+ * Entries are only trusted for the build they were written on, the build is identified by the exact Bukkit
+ * version together with a hash of the server jar's central directory. That directory lists the name, size & CRC-32
+ * of every class in the jar, so any rebuilt jar gets a new hash while only a few megabytes of it are read.
+ * Every cached member is still validated when it's read, a stale entry is dropped and the caller falls back to probing.
+ */
+public final class ReflectionCache {
+
+    private static final String FILE_NAME = "reflection-cache.properties";
+    private static final String BUILD_KEY = "#build";
+    private static final String NONE = "";
+
+    private static final Map<String, String> ENTRIES = new ConcurrentHashMap<>();
+    private static final String BUILD = findBuild();
+    private static volatile File file;
+    private static volatile boolean loaded;
+    private static volatile boolean dirty;
+
+    private ReflectionCache() {
+    }
+
+    /**
+     * Loads the cache file of the given folder, entries resolved before it was loaded are kept.
+     *
+     * @param folder the data folder of the plugin that shades ModernDisguise
+     */
+    public static synchronized void load(@NotNull final File folder) {
+        if (file != null) {
+            return;
+        }
+        loaded = true;
+        file = new File(folder, FILE_NAME);
+        if (!file.isFile()) {
+            dirty = !ENTRIES.isEmpty();
+            return;
+        }
+
+        final Properties properties = new Properties();
+        try (final InputStream stream = Files.newInputStream(file.toPath())) {
+            properties.load(stream);
+        } catch (final Exception exception) {
+            Bukkit.getLogger().log(Level.WARNING, "[ModernDisguise] Failed to read " + FILE_NAME + ", it will be rebuilt", exception);
+            dirty = true;
+            return;
+        }
+
+        if (!BUILD.equals(properties.getProperty(BUILD_KEY))) {
+            dirty = true;
+            return;
+        }
+        for (final String key : properties.stringPropertyNames()) {
+            if (!key.equals(BUILD_KEY)) {
+                ENTRIES.putIfAbsent(key, properties.getProperty(key));
+            }
+        }
+        dirty = ENTRIES.size() != properties.size() - 1;
+    }
+
+    /**
+     * Writes the cache file if anything was resolved since it was loaded.
+     */
+    public static synchronized void save() {
+        if (!dirty || file == null) {
+            return;
+        }
+
+        final Properties properties = new Properties();
+        properties.putAll(ENTRIES);
+        properties.setProperty(BUILD_KEY, BUILD);
+        try {
+            final File folder = file.getParentFile();
+            if (folder != null && !folder.isDirectory() && !folder.mkdirs()) {
+                return;
+            }
+            try (final OutputStream stream = Files.newOutputStream(file.toPath())) {
+                properties.store(stream, "ModernDisguise reflection cache, safe to delete");
+            }
+            dirty = false;
+        } catch (final Exception exception) {
+            Bukkit.getLogger().log(Level.WARNING, "[ModernDisguise] Failed to write " + FILE_NAME, exception);
+        }
+    }
+
+    /**
+     * @param key the key of the cached lookup
+     * @return true if the lookup was cached & found nothing
+     */
+    public static boolean isMissing(@NotNull final String key) {
+        return NONE.equals(get(key));
+    }
+
+    /**
+     * Finds the cached {@link Class} of a lookup, it's loaded without being initialized.
+     *
+     * @param key the key of the cached lookup
+     * @return null if nothing valid is cached for the key
+     */
+    public static @Nullable Class<?> getClass(@NotNull final String key) {
+        final String name = get(key);
+        if (name == null || name.isEmpty()) {
+            return null;
+        }
+        try {
+            return Class.forName(name, false, ReflectionCache.class.getClassLoader());
+        } catch (final Throwable ignored) {
+            invalidate(key);
+            return null;
+        }
+    }
+
+    /**
+     * Finds the cached {@link Field} of a lookup.
+     *
+     * @param key  the key of the cached lookup
+     * @param type a type the field must be assignable to
+     * @return null if nothing valid is cached for the key
+     */
+    public static @Nullable Field getField(@NotNull final String key, @NotNull final Class<?> type) {
+        final String value = get(key);
+        final int split = value == null ? -1 : value.lastIndexOf('#');
+        if (split == -1) {
+            return null;
+        }
+        try {
+            final Class<?> owner = Class.forName(value.substring(0, split), false, ReflectionCache.class.getClassLoader());
+            final Field field = owner.getDeclaredField(value.substring(split + 1));
+            if (type.isAssignableFrom(field.getType())) {
+                return field;
+            }
+        } catch (final Throwable ignored) {
+        }
+        invalidate(key);
+        return null;
+    }
+
+    /**
+     * Finds the cached {@link Constructor} of a lookup.
+     *
+     * @param key   the key of the cached lookup
+     * @param owner the {@link Class} declaring the constructor
+     * @return null if nothing valid is cached for the key
+     */
+    public static @Nullable Constructor<?> getConstructor(@NotNull final String key, @NotNull final Class<?> owner) {
+        final String value = get(key);
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            final String[] names = value.equals("()") ? new String[0] : value.split(",");
+            final Class<?>[] parameters = new Class<?>[names.length];
+            for (int i = 0; i < names.length; i++) {
+                parameters[i] = Class.forName(names[i], false, owner.getClassLoader());
+            }
+            return owner.getDeclaredConstructor(parameters);
+        } catch (final Throwable ignored) {
+            invalidate(key);
+            return null;
+        }
+    }
+
+    /**
+     * Caches the outcome of a class lookup.
+     *
+     * @param key   the key of the lookup
+     * @param clazz the found {@link Class}, or null if the lookup found nothing
+     */
+    public static void putClass(@NotNull final String key, @Nullable final Class<?> clazz) {
+        put(key, clazz == null ? NONE : clazz.getName());
+    }
+
+    /**
+     * Caches the outcome of a field lookup.
+     *
+     * @param key   the key of the lookup
+     * @param field the found {@link Field}
+     */
+    public static void putField(@NotNull final String key, @NotNull final Field field) {
+        put(key, field.getDeclaringClass().getName() + "#" + field.getName());
+    }
+
+    /**
+     * Caches the outcome of a constructor lookup.
+     *
+     * @param key         the key of the lookup
+     * @param constructor the found {@link Constructor}, or null if the lookup found nothing
+     */
+    public static void putConstructor(@NotNull final String key, @Nullable final Constructor<?> constructor) {
+        if (constructor == null) {
+            put(key, NONE);
+            return;
+        }
+        final StringBuilder builder = new StringBuilder();
+        for (final Class<?> parameter : constructor.getParameterTypes()) {
+            if (builder.length() != 0) {
+                builder.append(',');
+            }
+            builder.append(parameter.getName());
+        }
+        put(key, builder.length() == 0 ? "()" : builder.toString());
+    }
+
+    private static String get(@NotNull final String key) {
+        if (!loaded) {
+            loadFromProvidingPlugin();
+        }
+        return ENTRIES.get(key);
+    }
+
+    private static void put(@NotNull final String key, @NotNull final String value) {
+        if (!value.equals(ENTRIES.put(key, value))) {
+            dirty = true;
+        }
+    }
+
+    private static void invalidate(@NotNull final String key) {
+        if (ENTRIES.remove(key) != null) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Lookups can run before {@code DisguiseManager#initialize} hands us the plugin, so we try to find
+     * the plugin that loaded ModernDisguise on our own.
+     */
+    private static synchronized void loadFromProvidingPlugin() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        try {
+            load(JavaPlugin.getProvidingPlugin(ReflectionCache.class).getDataFolder());
+        } catch (final Throwable ignored) {
+            // not loaded by a plugin yet (static initializer of the main class), DisguiseManager#initialize loads it
+            loaded = false;
+        }
+    }
+
+    private static String findBuild() {
+        final StringBuilder builder = new StringBuilder();
+        try {
+            builder.append(Version.VERSION_EXACT).append('|').append(Bukkit.getVersion());
+            final File jar = new File(Bukkit.getServer().getClass().getProtectionDomain().getCodeSource().getLocation().toURI());
+            final String hash = hashCentralDirectory(jar);
+            if (hash != null) {
+                builder.append('|').append(hash);
+            } else {
+                // not a plain zip (zip64, an exploded folder), the size & modification time are the best we have
+                builder.append('|').append(jar.length()).append('|').append(jar.lastModified());
+            }
+        } catch (final Throwable ignored) {
+            // no server (tests), the entries are only kept in memory
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @param jar the jar being hashed
+     * @return the SHA-256 of the jar's central directory, or null if it couldn't be found
+     */
+    private static @Nullable String hashCentralDirectory(@NotNull final File jar) throws Exception {
+        try (final RandomAccessFile input = new RandomAccessFile(jar, "r")) {
+            // the end of central directory record is 22 bytes long & may be followed by a comment of up to 65535 bytes
+            final long length = input.length();
+            final int tail = (int) Math.min(length, 22 + 65535);
+            final byte[] buffer = new byte[tail];
+            input.seek(length - tail);
+            input.readFully(buffer);
+            for (int i = tail - 22; i >= 0; i--) {
+                if (buffer[i] != 0x50 || buffer[i + 1] != 0x4B || buffer[i + 2] != 0x05 || buffer[i + 3] != 0x06) {
+                    continue;
+                }
+                final long size = readInt(buffer, i + 12);
+                final long offset = readInt(buffer, i + 16);
+                if (offset + size > length - tail + i) {
+                    return null;
+                }
+
+                final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                final byte[] chunk = new byte[8192];
+                input.seek(offset);
+                long remaining = size;
+                while (remaining > 0) {
+                    final int read = input.read(chunk, 0, (int) Math.min(chunk.length, remaining));
+                    if (read < 0) {
+                        return null;
+                    }
+                    digest.update(chunk, 0, read);
+                    remaining -= read;
+                }
+                return new BigInteger(1, digest.digest()).toString(16);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the unsigned little endian int at the index
+     */
+    private static long readInt(final byte[] buffer, final int index) {
+        return (buffer[index] & 0xFFL)
+                | (buffer[index + 1] & 0xFFL) << 8
+                | (buffer[index + 2] & 0xFFL) << 16
+                | (buffer[index + 3] & 0xFFL) << 24;
+    }
+
+}
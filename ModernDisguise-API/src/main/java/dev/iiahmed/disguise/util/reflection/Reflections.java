@@ -2,6 +2,9 @@ package dev.iiahmed.disguise.util.reflection;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.util.Optional;
@@ -68,53 +71,118 @@ public final class Reflections {
         return getField(getClass(className), fieldType, index);
     }
 
+    /**
+     * Retrieve the getter of a field as a {@link MethodHandle}, hot paths keep it in a static final field
+     * so the JIT treats it as a constant, which it can't do for the handles inside a {@link FieldAccessor}.
+     *
+     * @param target - the target type.
+     * @param fieldType - a compatible field type.
+     * @return The getter, typed {@code (Object)fieldType} for primitives and {@code (Object)Object} otherwise.
+     */
+    public static MethodHandle getGetter(Class<?> target, Class<?> fieldType) {
+        final Field field = findField(target, null, fieldType, 0);
+        try {
+            return MethodHandles.lookup().unreflectGetter(field)
+                    .asType(MethodType.methodType(fieldType.isPrimitive() ? fieldType : Object.class, Object.class));
+        } catch (final IllegalAccessException e) {
+            throw new RuntimeException("Cannot access reflection.", e);
+        }
+    }
+
     private static <T> FieldAccessor<T> getField(
             final Class<?> target,
             final String name,
             final Class<T> fieldType,
-            int index
+            final int index
+    ) {
+        final Field field = findField(target, name, fieldType, index);
+
+        // method handles skip the access checks Field#get does on every call
+        final FieldAccessor<T> handle = HandleFieldAccessor.of(field);
+        if (handle != null) {
+            return handle;
+        }
+
+        // A function for retrieving a specific field value
+        return new FieldAccessor<T>() {
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T get(final Object target) {
+                try {
+                    return (T) field.get(target);
+                } catch (IllegalAccessException e) {
+                    throw new RuntimeException("Cannot access reflection.", e);
+                }
+            }
+
+            @Override
+            public int getInt(final Object target) {
+                try {
+                    return field.getInt(target);
+                } catch (IllegalAccessException e) {
+                    throw new RuntimeException("Cannot access reflection.", e);
+                }
+            }
+
+            @Override
+            public void set(final Object target, final Object value) {
+                try {
+                    field.set(target, value);
+                } catch (IllegalAccessException e) {
+                    throw new RuntimeException("Cannot access reflection.", e);
+                }
+            }
+
+            @Override
+            public boolean hasField(final Object target) {
+                // target instanceof DeclaringClass
+                return field.getDeclaringClass().isAssignableFrom(target.getClass());
+            }
+        };
+    }
+
+    private static Field findField(
+            final Class<?> target,
+            final String name,
+            final Class<?> fieldType,
+            final int index
     ) {
         if (target == null) {
             throw new IllegalArgumentException("Target class is null");
         }
+        if (name != null) {
+            return scanField(target, name, fieldType, index);
+        }
+
+        // a scan by type walks every declared field of the hierarchy, its outcome is cached for the next startups
+        final String key = "field." + target.getName() + "|" + fieldType.getName() + "|" + index;
+        final Field cached = ReflectionCache.getField(key, fieldType);
+        if (cached != null && cached.getDeclaringClass().isAssignableFrom(target)) {
+            cached.setAccessible(true);
+            return cached;
+        }
+        final Field field = scanField(target, null, fieldType, index);
+        ReflectionCache.putField(key, field);
+        return field;
+    }
+
+    private static Field scanField(
+            final Class<?> target,
+            final String name,
+            final Class<?> fieldType,
+            int index
+    ) {
         for (final Field field : target.getDeclaredFields()) {
             if ((name == null || field.getName().equals(name)) && fieldType.isAssignableFrom(field.getType()) && index-- <= 0) {
                 field.setAccessible(true);
-
-                // A function for retrieving a specific field value
-                return new FieldAccessor<T>() {
-
-                    @Override
-                    @SuppressWarnings("unchecked")
-                    public T get(final Object target) {
-                        try {
-                            return (T) field.get(target);
-                        } catch (IllegalAccessException e) {
-                            throw new RuntimeException("Cannot access reflection.", e);
-                        }
-                    }
-
-                    @Override
-                    public void set(final Object target, final Object value) {
-                        try {
-                            field.set(target, value);
-                        } catch (IllegalAccessException e) {
-                            throw new RuntimeException("Cannot access reflection.", e);
-                        }
-                    }
-
-                    @Override
-                    public boolean hasField(final Object target) {
-                        // target instanceof DeclaringClass
-                        return field.getDeclaringClass().isAssignableFrom(target.getClass());
-                    }
-                };
+                return field;
             }
         }
 
         // Search in parent classes
         if (target.getSuperclass() != null)
-            return getField(target.getSuperclass(), name, fieldType, index);
+            return scanField(target.getSuperclass(), name, fieldType, index);
 
         throw new IllegalArgumentException("Cannot find field with type " + fieldType);
     }
@@ -0,0 +1,132 @@
+package dev.iiahmed.disguise;
+
+import dev.iiahmed.disguise.util.HttpStatusException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachedSkinAPITest {
+
+    private static final Skin SKIN = new Skin("textures", "signature");
+
+    @Test
+    void cachesSkins() {
+        final AtomicInteger fetches = new AtomicInteger();
+        final CachedSkinAPI<String> api = new SkinAPI<String>(context -> {
+            fetches.incrementAndGet();
+            return SKIN;
+        }).cached(16, 1, TimeUnit.MINUTES);
+
+        assertSame(SKIN, api.of("a"));
+        assertSame(SKIN, api.of("a"));
+        assertEquals(1, fetches.get());
+        assertEquals(1, api.getHits());
+    }
+
+    @Test
+    void synchronousFailureDoesNotHang() throws Exception {
+        final CachedSkinAPI<String> api = new CachedSkinAPI<>(new SkinAPI<String>(context -> SKIN) {
+            @Override
+            public CompletableFuture<Skin> ofAsync(final Context<String> context) {
+                throw new IllegalStateException("broken");
+            }
+        }, 16, 1, TimeUnit.MINUTES);
+
+        final ExecutionException exception = assertThrows(ExecutionException.class, () -> api.ofAsync("a").get(1, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof IllegalStateException);
+        // a second fetch isn't stuck behind the first one
+        assertThrows(ExecutionException.class, () -> api.ofAsync("a").get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void callersGetTheirOwnFutures() throws Exception {
+        final CompletableFuture<Skin> pending = new CompletableFuture<>();
+        final CachedSkinAPI<String> api = new CachedSkinAPI<>(new SkinAPI<String>(context -> SKIN) {
+            @Override
+            public CompletableFuture<Skin> ofAsync(final Context<String> context) {
+                return pending;
+            }
+        }, 16, 1, TimeUnit.MINUTES);
+
+        final CompletableFuture<Skin> first = api.ofAsync("a");
+        final CompletableFuture<Skin> second = api.ofAsync("a");
+        first.cancel(false);
+        pending.complete(SKIN);
+
+        assertSame(SKIN, second.get(1, TimeUnit.SECONDS));
+        assertEquals(1, api.getCoalesced());
+    }
+
+    @Test
+    void synchronousFetchDoesNotWaitOnAsync() throws Exception {
+        final CompletableFuture<Skin> pending = new CompletableFuture<>();
+        final CachedSkinAPI<String> api = new CachedSkinAPI<>(new SkinAPI<String>(context -> SKIN) {
+            @Override
+            public CompletableFuture<Skin> ofAsync(final Context<String> context) {
+                return pending;
+            }
+        }, 16, 1, TimeUnit.MINUTES);
+
+        final CompletableFuture<Skin> async = api.ofAsync("a");
+        assertSame(SKIN, CompletableFuture.supplyAsync(() -> api.of("a")).get(1, TimeUnit.SECONDS));
+        assertFalse(async.isDone());
+        pending.complete(SKIN);
+        assertSame(SKIN, async.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void doesNotCacheTransientFailures() {
+        final AtomicInteger fetches = new AtomicInteger();
+        final CachedSkinAPI<String> api = new SkinAPI<String>(context -> {
+            if (fetches.incrementAndGet() == 1) {
+                throw new HttpStatusException("stub", 429, 1000);
+            }
+            return SKIN;
+        }).cached(16, 1, TimeUnit.MINUTES);
+
+        assertThrows(HttpStatusException.class, () -> api.of("a"));
+        assertSame(SKIN, api.of("a"));
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    void doesNotCacheTimeouts() throws Exception {
+        final AtomicInteger fetches = new AtomicInteger();
+        final CachedSkinAPI<String> api = new CachedSkinAPI<>(new SkinAPI<String>(context -> SKIN) {
+            @Override
+            public CompletableFuture<Skin> ofAsync(final Context<String> context) {
+                final CompletableFuture<Skin> future = new CompletableFuture<>();
+                if (fetches.incrementAndGet() == 1) {
+                    future.completeExceptionally(new TimeoutException());
+                } else {
+                    future.complete(SKIN);
+                }
+                return future;
+            }
+        }, 16, 1, TimeUnit.MINUTES);
+
+        assertThrows(ExecutionException.class, () -> api.ofAsync("a").get(1, TimeUnit.SECONDS));
+        assertSame(SKIN, api.ofAsync("a").get(1, TimeUnit.SECONDS));
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    void cachesOtherFailures() {
+        final AtomicInteger fetches = new AtomicInteger();
+        final CachedSkinAPI<String> api = new SkinAPI<String>(context -> {
+            fetches.incrementAndGet();
+            throw new HttpStatusException("stub", 404, -1);
+        }).cached(16, 1, TimeUnit.MINUTES);
+
+        assertThrows(HttpStatusException.class, () -> api.of("a"));
+        assertThrows(HttpStatusException.class, () -> api.of("a"));
+        assertEquals(1, fetches.get());
+    }
+
+}
@@ -0,0 +1,112 @@
+package dev.iiahmed.disguise;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompositeSkinAPITest {
+
+    private static final Skin FIRST = new Skin("first", "signature");
+    private static final Skin SECOND = new Skin("second", "signature");
+
+    private static SkinAPI<String> returning(final Skin skin, final long delay) {
+        return new SkinAPI<>(context -> {
+            try {
+                Thread.sleep(delay);
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+            return skin;
+        });
+    }
+
+    private static SkinAPI<String> failing(final long delay) {
+        return new SkinAPI<>(context -> {
+            try {
+                Thread.sleep(delay);
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalStateException("down");
+        });
+    }
+
+    @Test
+    void usesTheFirstValidSkin() {
+        final CompositeSkinAPI<String> api = new CompositeSkinAPI<>(1, TimeUnit.SECONDS, false, failing(0), returning(SECOND, 0));
+        assertSame(SECOND, api.of("a"));
+    }
+
+    @Test
+    void synchronousFetchHonoursTheTimeout() {
+        final CompositeSkinAPI<String> api = new CompositeSkinAPI<>(200, TimeUnit.MILLISECONDS, false, returning(FIRST, 5000), returning(SECOND, 0));
+
+        final long start = System.nanoTime();
+        assertSame(SECOND, api.of("a"));
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsed < 2000, "took " + elapsed + "ms");
+    }
+
+    @Test
+    void synchronousFetchFailsWithTheLastFailure() {
+        final CompositeSkinAPI<String> api = new CompositeSkinAPI<>(1, TimeUnit.SECONDS, false, failing(0), failing(0));
+        final IllegalStateException exception = assertThrows(IllegalStateException.class, () -> api.of("a"));
+        assertEquals("down", exception.getMessage());
+    }
+
+    @Test
+    void asynchronousFetchFallsBack() throws Exception {
+        final CompositeSkinAPI<String> api = new CompositeSkinAPI<>(200, TimeUnit.MILLISECONDS, false, returning(FIRST, 5000), returning(SECOND, 0));
+        assertSame(SECOND, api.ofAsync("a").get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void hedgedFetchWaitsForTheRunningSource() throws Exception {
+        // fast until it's measured, then it fails after the hedge already started the second source
+        final AtomicInteger calls = new AtomicInteger();
+        final SkinAPI<String> first = new SkinAPI<>(context -> {
+            if (calls.incrementAndGet() <= 8) {
+                return FIRST;
+            }
+            try {
+                Thread.sleep(100);
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalStateException("down");
+        });
+        final CompositeSkinAPI<String> api = new CompositeSkinAPI<>(2, TimeUnit.SECONDS, true, first, returning(SECOND, 300));
+        // the unmeasured second source is tried once too, it's the slower one afterwards
+        while (calls.get() < 8) {
+            api.ofAsync("a").get(5, TimeUnit.SECONDS);
+        }
+
+        assertSame(SECOND, api.ofAsync("a").get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void hedgedFetchFailsOnceEverySourceDid() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final SkinAPI<String> first = new SkinAPI<>(context -> {
+            if (calls.incrementAndGet() <= 8) {
+                return FIRST;
+            }
+            throw new IllegalStateException("down");
+        });
+        final CompositeSkinAPI<String> api = new CompositeSkinAPI<>(2, TimeUnit.SECONDS, true, first, failing(0));
+        while (calls.get() < 8) {
+            api.ofAsync("a").get(5, TimeUnit.SECONDS);
+        }
+
+        for (int i = 0; i < 50; i++) {
+            final ExecutionException exception = assertThrows(ExecutionException.class, () -> api.ofAsync("a").get(5, TimeUnit.SECONDS));
+            assertTrue(exception.getCause() instanceof IllegalStateException, String.valueOf(exception.getCause()));
+        }
+    }
+
+}
@@ -0,0 +1,148 @@
+package dev.iiahmed.disguise;
+
+import com.sun.net.httpserver.HttpServer;
+import dev.iiahmed.disguise.util.HttpStatusException;
+import dev.iiahmed.disguise.util.RequestScheduler;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the {@link NameSkinAPI} against a local stub of Mojang's bulk profile lookup.
+ */
+@SuppressWarnings("unchecked")
+class NameSkinAPITest {
+
+    private static final Skin SKIN = new Skin("textures", "signature");
+    private static final UUID ALPHA = UUID.fromString("00000000-0000-0000-0000-00000000000a");
+    private static final UUID BETA = UUID.fromString("00000000-0000-0000-0000-00000000000b");
+
+    // the names of every bulk request in order
+    private final List<List<Object>> requests = new ArrayList<>();
+    private final AtomicInteger status = new AtomicInteger(200);
+    private final List<UUID> fetched = new ArrayList<>();
+    private HttpServer server;
+    private NameSkinAPI api;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/profiles/minecraft", exchange -> {
+            final JSONArray names;
+            try (final Reader reader = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+                names = (JSONArray) new JSONParser().parse(reader);
+            } catch (final Exception exception) {
+                throw new IOException(exception);
+            }
+            synchronized (requests) {
+                requests.add(new ArrayList<Object>(names));
+            }
+            final JSONArray profiles = new JSONArray();
+            for (final Object name : names) {
+                final UUID id = "alpha".equals(name) ? ALPHA : "beta".equals(name) ? BETA : null;
+                if (id != null) {
+                    final JSONObject profile = new JSONObject();
+                    profile.put("id", id.toString().replace("-", ""));
+                    profile.put("name", "alpha".equals(name) ? "Alpha" : "Beta");
+                    profiles.add(profile);
+                }
+            }
+            final int code = status.get();
+            final byte[] body = (code == 200 ? profiles.toJSONString() : "{}").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(code, body.length);
+            try (final OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        });
+        server.start();
+
+        final SkinAPI<UUID> skins = new SkinAPI<>(context -> {
+            synchronized (fetched) {
+                fetched.add(context.value());
+            }
+            return SKIN;
+        });
+        api = new NameSkinAPI(skins, "http://127.0.0.1:" + server.getAddress().getPort(),
+                new RequestScheduler("stub", 10, 10, TimeUnit.SECONDS));
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop(0);
+    }
+
+    @Test
+    void batchesLookups() throws Exception {
+        final CompletableFuture<UUID> alpha = api.resolveId("Alpha");
+        final CompletableFuture<UUID> beta = api.resolveId("Beta");
+
+        assertEquals(ALPHA, alpha.get(5, TimeUnit.SECONDS));
+        assertEquals(BETA, beta.get(5, TimeUnit.SECONDS));
+        assertEquals(1, requests.size());
+        assertEquals(2, requests.get(0).size());
+
+        // resolved names are remembered
+        assertSame(SKIN, api.ofAsync("alpha").get(5, TimeUnit.SECONDS));
+        assertEquals(1, requests.size());
+        assertEquals(ALPHA, fetched.get(0));
+    }
+
+    @Test
+    void remembersUnknownNames() throws Exception {
+        assertNull(api.resolveId("Nobody").get(5, TimeUnit.SECONDS));
+
+        final ExecutionException exception = assertThrows(ExecutionException.class, () -> api.ofAsync("nobody").get(5, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof IllegalArgumentException);
+        assertEquals(1, requests.size());
+        assertTrue(fetched.isEmpty());
+    }
+
+    @Test
+    void callersGetTheirOwnFutures() throws Exception {
+        final CompletableFuture<UUID> first = api.resolveId("Alpha");
+        final CompletableFuture<UUID> second = api.resolveId("alpha");
+        first.cancel(false);
+
+        assertEquals(ALPHA, second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, requests.size());
+        assertEquals(1, requests.get(0).size());
+    }
+
+    @Test
+    void failsTheWholeBatch() throws Exception {
+        status.set(400);
+        final CompletableFuture<UUID> alpha = api.resolveId("Alpha");
+        final CompletableFuture<UUID> beta = api.resolveId("Beta");
+
+        final ExecutionException exception = assertThrows(ExecutionException.class, () -> alpha.get(5, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof HttpStatusException);
+        assertEquals(400, ((HttpStatusException) exception.getCause()).getStatus());
+        assertThrows(ExecutionException.class, () -> beta.get(5, TimeUnit.SECONDS));
+
+        // failures aren't remembered, the next lookup asks again
+        status.set(200);
+        assertEquals(ALPHA, api.resolveId("Alpha").get(5, TimeUnit.SECONDS));
+        assertEquals(2, requests.size());
+    }
+
+}
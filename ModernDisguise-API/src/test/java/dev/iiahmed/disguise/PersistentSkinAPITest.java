@@ -0,0 +1,152 @@
+package dev.iiahmed.disguise;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentSkinAPITest {
+
+    private static final Skin SKIN = new Skin("textures", "signature");
+
+    private final AtomicInteger fetches = new AtomicInteger();
+    private File folder, file;
+
+    @BeforeEach
+    void create() throws IOException {
+        folder = Files.createTempDirectory("skins").toFile();
+        file = new File(folder, "skins.dat");
+    }
+
+    @AfterEach
+    void delete() {
+        final File[] files = folder.listFiles();
+        if (files != null) {
+            for (final File child : files) {
+                child.delete();
+            }
+        }
+        folder.delete();
+    }
+
+    private SkinAPI<String> counting() {
+        return new SkinAPI<>(context -> {
+            fetches.incrementAndGet();
+            return new Skin("textures-" + context.value(), "signature");
+        });
+    }
+
+    private SkinAPI<String> failing() {
+        return new SkinAPI<>(context -> {
+            throw new IllegalStateException("offline");
+        });
+    }
+
+    @Test
+    void keepsSkinsAcrossRestarts() {
+        final PersistentSkinAPI<String> first = counting().persistent(file, 1, TimeUnit.HOURS);
+        assertEquals("textures-a", first.of("a").getTextures());
+        assertEquals("textures-b", first.of("b").getTextures());
+        first.close();
+        assertTrue(new File(file.getPath() + ".idx").isFile());
+
+        final PersistentSkinAPI<String> second = failing().persistent(file, 1, TimeUnit.HOURS);
+        assertEquals("textures-a", second.of("a").getTextures());
+        assertEquals("textures-b", second.of("b").getTextures());
+        assertEquals(2, second.size());
+        assertEquals(2, fetches.get());
+        second.close();
+    }
+
+    @Test
+    void scansRecordsAppendedAfterTheIndex() throws IOException {
+        final PersistentSkinAPI<String> first = counting().persistent(file, 1, TimeUnit.HOURS);
+        first.of("a");
+        first.close();
+
+        // an index older than the log, as if the server stopped before saving it
+        final File index = new File(file.getPath() + ".idx");
+        final byte[] saved = Files.readAllBytes(index.toPath());
+        final PersistentSkinAPI<String> second = counting().persistent(file, 1, TimeUnit.HOURS);
+        second.of("b");
+        second.close();
+        Files.write(index.toPath(), saved);
+
+        // and a record that was cut off while being written
+        try (final RandomAccessFile data = new RandomAccessFile(file, "rw")) {
+            data.seek(data.length());
+            data.writeUTF("c");
+            data.writeInt(100);
+        }
+
+        final PersistentSkinAPI<String> third = failing().persistent(file, 1, TimeUnit.HOURS);
+        assertEquals("textures-a", third.of("a").getTextures());
+        assertEquals("textures-b", third.of("b").getTextures());
+        assertEquals(2, third.size());
+        third.close();
+    }
+
+    @Test
+    void usesStoredSkinWhenFetchFails() {
+        final PersistentSkinAPI<String> first = counting().persistent(file, 1, TimeUnit.HOURS);
+        first.of("a");
+        first.close();
+
+        // every stored skin is outdated right away
+        final PersistentSkinAPI<String> second = failing().persistent(file, 0, TimeUnit.MILLISECONDS);
+        assertEquals("textures-a", second.of("a").getTextures());
+        assertThrows(IllegalStateException.class, () -> second.of("b"));
+        second.close();
+    }
+
+    @Test
+    void fetchesAsyncThroughTheDelegate() throws Exception {
+        final AtomicInteger asyncFetches = new AtomicInteger();
+        final SkinAPI<String> delegate = new SkinAPI<String>(context -> {
+            throw new IllegalStateException("the sync lookup is not used");
+        }) {
+            @Override
+            public CompletableFuture<Skin> ofAsync(final Context<String> context) {
+                asyncFetches.incrementAndGet();
+                return CompletableFuture.completedFuture(SKIN);
+            }
+        };
+
+        final PersistentSkinAPI<String> api = delegate.persistent(file, 1, TimeUnit.HOURS);
+        assertSame(SKIN, api.ofAsync("a").get(5, TimeUnit.SECONDS));
+        assertEquals(SKIN.getTextures(), api.ofAsync("a").get(5, TimeUnit.SECONDS).getTextures());
+        assertEquals(1, asyncFetches.get());
+        api.close();
+    }
+
+    @Test
+    void compactsOutdatedRecords() throws IOException {
+        final PersistentSkinAPI<String> first = counting().persistent(file, 0, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 100; i++) {
+            first.of("a");
+        }
+        first.close();
+        final long before = file.length();
+
+        // the log is compacted once it's loaded again
+        final PersistentSkinAPI<String> second = failing().persistent(file, 1, TimeUnit.HOURS);
+        assertEquals("textures-a", second.of("a").getTextures());
+        second.close();
+        assertTrue(file.length() < before / 10, before + " -> " + file.length());
+
+        final PersistentSkinAPI<String> third = failing().persistent(file, 1, TimeUnit.HOURS);
+        assertEquals("textures-a", third.of("a").getTextures());
+        assertEquals(1, third.size());
+        third.close();
+    }
+
+}
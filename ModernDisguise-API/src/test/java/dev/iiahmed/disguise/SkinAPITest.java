@@ -0,0 +1,34 @@
+package dev.iiahmed.disguise;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SkinAPITest {
+
+    private static final Skin SKIN = new Skin("textures", "signature");
+
+    @Test
+    void requiresAProvider() {
+        assertThrows(NullPointerException.class, () -> new SkinAPI<String>(null));
+    }
+
+    @Test
+    void requiresFetchWithoutAProvider() {
+        assertThrows(IllegalStateException.class, () -> new SkinAPI<String>() {
+        });
+    }
+
+    @Test
+    void fetchesWithoutAProvider() {
+        final SkinAPI<String> api = new SkinAPI<String>() {
+            @Override
+            protected Skin fetch(final Context<String> context) {
+                return SKIN;
+            }
+        };
+
+        assertSame(SKIN, api.of("a"));
+    }
+
+}
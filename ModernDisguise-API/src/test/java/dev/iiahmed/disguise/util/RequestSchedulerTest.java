@@ -0,0 +1,193 @@
+package dev.iiahmed.disguise.util;
+
+import com.sun.net.httpserver.HttpServer;
+import org.json.simple.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the {@link RequestScheduler} against a local stub of a skin service.
+ */
+class RequestSchedulerTest {
+
+    private final AtomicInteger hits = new AtomicInteger();
+    // the responses of the stub in order, the last one is repeated
+    private final List<int[]> responses = new ArrayList<>();
+    private HttpServer server;
+    private String url;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/profile", exchange -> {
+            final int hit = hits.getAndIncrement();
+            final int[] response;
+            synchronized (responses) {
+                response = responses.get(Math.min(hit, responses.size() - 1));
+            }
+            if (response[1] >= 0) {
+                exchange.getResponseHeaders().set("Retry-After", String.valueOf(response[1]));
+            }
+            final byte[] body = (response[0] == 200 ? "{\"id\":\"" + hit + "\"}" : "{}").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(response[0], body.length);
+            try (final OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/profile";
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop(0);
+    }
+
+    private void respond(final int status, final int retryAfter) {
+        synchronized (responses) {
+            responses.add(new int[]{status, retryAfter});
+        }
+    }
+
+    private CompletableFuture<JSONObject> submit(final RequestScheduler scheduler) {
+        return scheduler.submit(() -> HttpUtil.getJSONObject(url));
+    }
+
+    @Test
+    void honoursRetryAfter() throws Exception {
+        respond(429, 1);
+        respond(200, -1);
+        final RequestScheduler scheduler = new RequestScheduler("stub", 10, 10, TimeUnit.SECONDS);
+
+        final long start = System.nanoTime();
+        final JSONObject result = submit(scheduler).get(10, TimeUnit.SECONDS);
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals("1", result.get("id"));
+        assertEquals(2, hits.get());
+        assertTrue(elapsed >= 900, "retried after " + elapsed + "ms");
+    }
+
+    @Test
+    void backsOffExponentially() throws Exception {
+        respond(503, -1);
+        respond(503, -1);
+        respond(200, -1);
+        final RequestScheduler scheduler = new RequestScheduler("stub", 10, 10, TimeUnit.SECONDS);
+
+        final long start = System.nanoTime();
+        submit(scheduler).get(10, TimeUnit.SECONDS);
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(3, hits.get());
+        // 500ms after the first failure & 1000ms after the second
+        assertTrue(elapsed >= 1400, "succeeded after " + elapsed + "ms");
+    }
+
+    @Test
+    void givesUpAfterMaxRetries() {
+        respond(429, 0);
+        final RequestScheduler scheduler = new RequestScheduler("stub", 10, 10, TimeUnit.SECONDS);
+        scheduler.setMaxRetries(2);
+
+        final ExecutionException exception = assertThrows(ExecutionException.class, () -> submit(scheduler).get(10, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof HttpStatusException);
+        assertEquals(429, ((HttpStatusException) exception.getCause()).getStatus());
+        assertEquals(3, hits.get());
+    }
+
+    @Test
+    void doesNotRetryClientErrors() {
+        respond(404, -1);
+        final RequestScheduler scheduler = new RequestScheduler("stub", 10, 10, TimeUnit.SECONDS);
+
+        final ExecutionException exception = assertThrows(ExecutionException.class, () -> submit(scheduler).get(10, TimeUnit.SECONDS));
+        assertEquals(404, ((HttpStatusException) exception.getCause()).getStatus());
+        assertEquals(1, hits.get());
+    }
+
+    @Test
+    void queuesRequestsUnderTheRate() throws Exception {
+        respond(200, -1);
+        // 2 requests right away, then one every 500ms
+        final RequestScheduler scheduler = new RequestScheduler("stub", 2, 2, TimeUnit.SECONDS);
+
+        final long start = System.nanoTime();
+        final List<CompletableFuture<JSONObject>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(submit(scheduler));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(4, hits.get());
+        assertTrue(elapsed >= 900, "4 requests took " + elapsed + "ms");
+    }
+
+    @Test
+    void callFailsFastWithoutToken() {
+        respond(200, -1);
+        final RequestScheduler scheduler = new RequestScheduler("stub", 1, 1, TimeUnit.MINUTES);
+
+        assertNotNull(scheduler.call(() -> HttpUtil.getJSONObject(url)));
+        final long start = System.nanoTime();
+        final RateLimitedException exception = assertThrows(RateLimitedException.class, () -> scheduler.call(() -> HttpUtil.getJSONObject(url)));
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(exception.isThrottled());
+        assertEquals("stub", exception.getUrl());
+        assertTrue(exception.getRetryAfter() > 0);
+        assertTrue(elapsed < 500, "failed after " + elapsed + "ms");
+        assertEquals(1, hits.get());
+    }
+
+    @Test
+    void failsWhenTheExecutorRejects() {
+        respond(200, -1);
+        final RequestScheduler scheduler = new RequestScheduler("stub", 10, 10, TimeUnit.SECONDS);
+
+        SkinExecutor.setExecutor(task -> {
+            throw new RejectedExecutionException("shut down");
+        });
+        try {
+            final ExecutionException exception = assertThrows(ExecutionException.class, () -> submit(scheduler).get(1, TimeUnit.SECONDS));
+            assertTrue(exception.getCause() instanceof RejectedExecutionException);
+        } finally {
+            // back to the default executor
+            SkinExecutor.setParallelism(SkinExecutor.getParallelism());
+        }
+        assertEquals(0, hits.get());
+    }
+
+    @Test
+    void callPausesTheQueueWhenThrottled() throws Exception {
+        respond(429, 1);
+        respond(200, -1);
+        final RequestScheduler scheduler = new RequestScheduler("stub", 10, 10, TimeUnit.SECONDS);
+
+        assertThrows(HttpStatusException.class, () -> scheduler.call(() -> HttpUtil.getJSONObject(url)));
+        final long start = System.nanoTime();
+        submit(scheduler).get(10, TimeUnit.SECONDS);
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(2, hits.get());
+        assertTrue(elapsed >= 800, "queued request ran after " + elapsed + "ms");
+    }
+
+}
@@ -9,7 +9,6 @@ import dev.velix.imperat.BukkitSource;
 import dev.velix.imperat.annotations.*;
 import dev.velix.imperat.command.AttachmentMode;
 import net.md_5.bungee.api.ChatColor;
-import org.bukkit.Bukkit;
 import org.bukkit.entity.EntityType;
 import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
@@ -34,11 +33,16 @@ public class DisguiseCommand {
         final long time = System.currentTimeMillis();
         final Disguise.Builder builder = Disguise.builder().setName(name);
 
-        if (skin != null) {
-            builder.setSkin(SkinAPI.MOJANG, Bukkit.getOfflinePlayer(skin).getUniqueId());
+        if (skin == null) {
+            return provider.disguise(player, builder.build()) + " (done in " + (System.currentTimeMillis() - time) + "ms)";
         }
 
-        return provider.disguise(player, builder.build()) + " (done in " + (System.currentTimeMillis() - time) + "ms)";
+        // the name is resolved & the skin is fetched off the main thread, the disguise is applied back on it once the skin arrives
+        builder.setSkinAsync(NameSkinAPI.MOJANG, skin);
+        provider.disguise(player, builder.buildAsync()).thenAccept(response -> player.sendMessage(
+                response + " (done in " + (System.currentTimeMillis() - time) + "ms)"
+        ));
+        return "Fetching the skin of " + skin + "...";
     }
 
     @SubCommand(value = "entity", attachment = AttachmentMode.EMPTY)
@@ -1,8 +1,11 @@
 package dev.iiahmed.disguise;
 
 import dev.iiahmed.disguise.vs.*;
+import dev.iiahmed.disguise.listener.PacketListener;
 import dev.iiahmed.disguise.listener.PlayerListener;
+import dev.iiahmed.disguise.util.DefaultEntityProvider;
 import dev.iiahmed.disguise.util.Version;
+import dev.iiahmed.disguise.util.reflection.ReflectionCache;
 import org.bukkit.plugin.Plugin;
 import org.jetbrains.annotations.NotNull;
 
@@ -114,7 +117,15 @@ public final class DisguiseManager {
         final Plugin old = PROVIDER.getPlugin();
         if (old == null || !old.isEnabled()) {
             PROVIDER.plugin = plugin;
+            ReflectionCache.load(plugin.getDataFolder());
+            SkinAPI.setLocalResolver(PROVIDER::getRealSkin);
+            SkinAPI.setLocalIdResolver(PROVIDER::getOnlineId);
             PROVIDER.entityDisguises = entityDisguises;
+            PROVIDER.packetHandler = entityDisguises ? PacketListener::new : null;
+            if (entityDisguises && PROVIDER.getEntityProvider() instanceof DefaultEntityProvider) {
+                ((DefaultEntityProvider) PROVIDER.getEntityProvider()).prewarm(2);
+            }
+            // the cache is saved once the entity lookups are done & again when the plugin is disabled
             plugin.getServer().getPluginManager().registerEvents(new PlayerListener(), plugin);
         }
     }
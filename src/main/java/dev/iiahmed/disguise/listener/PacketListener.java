@@ -2,9 +2,11 @@ package dev.iiahmed.disguise.listener;
 
 import dev.iiahmed.disguise.DisguiseManager;
 import dev.iiahmed.disguise.DisguiseProvider;
+import dev.iiahmed.disguise.DisguiseSnapshot;
 import dev.iiahmed.disguise.util.DisguiseUtil;
 import dev.iiahmed.disguise.util.Version;
 import dev.iiahmed.disguise.util.reflection.FieldAccessor;
+import dev.iiahmed.disguise.util.reflection.ReflectionCache;
 import dev.iiahmed.disguise.util.reflection.Reflections;
 import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelHandlerContext;
@@ -12,32 +14,72 @@ import io.netty.channel.ChannelPromise;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.logging.Level;
 
 public final class PacketListener extends ChannelDuplexHandler {
 
-    private static final String BUNDLE_PACKET_NAME = "ClientboundBundlePacket";
+    /**
+     * Every packet type that this listener rewrites, resolved once and looked up by {@link Class} identity
+     * so that packets we don't care about never pay for anything more than a single map probe.
+     */
+    private static final Map<Class<?>, PacketType> PACKET_TYPES = new IdentityHashMap<>();
     private static final String PACKET_NAME;
     private static final FieldAccessor<?> PACKET_LIST;
-    private static final FieldAccessor<UUID> PLAYER_ID;
+    // read on every spawn packet, kept as static final handles so the JIT can inline them
+    private static final MethodHandle ENTITY_ID, PLAYER_ID;
+    /**
+     * The bundled packets that are dropped for the disguised entity when a bundle is rewritten
+     * (the player's metadata & attributes don't fit the disguise's type), mapped to their entity id field.
+     */
+    private static final Map<Class<?>, FieldAccessor<Integer>> BUNDLE_DROPPED = new IdentityHashMap<>();
+    private static final Constructor<?> BUNDLE_CONSTRUCTOR;
 
     static {
         try {
             final String prefix = Version.isOrOver(17) ? "net.minecraft.network.protocol.game." : DisguiseUtil.PREFIX;
-            final Class<?> namedEntitySpawn = Reflections.findClass(
-                    // order is IMPORTANT
-                    prefix + "PacketPlayOutNamedEntitySpawn",
-                    prefix + "PacketPlayOutSpawnEntity",
-                    prefix + "ClientboundAddEntityPacket"
-            ).orElseThrow(() -> new RuntimeException("Failed to find spawn entity packet class!"));
+            Class<?> namedEntitySpawn = ReflectionCache.getClass("packet.spawn");
+            if (namedEntitySpawn == null) {
+                namedEntitySpawn = Reflections.findClass(
+                        // order is IMPORTANT
+                        prefix + "PacketPlayOutNamedEntitySpawn",
+                        prefix + "PacketPlayOutSpawnEntity",
+                        prefix + "ClientboundAddEntityPacket"
+                ).orElseThrow(() -> new RuntimeException("Failed to find spawn entity packet class!"));
+                ReflectionCache.putClass("packet.spawn", namedEntitySpawn);
+            }
             PACKET_NAME = namedEntitySpawn.getSimpleName();
+            PACKET_TYPES.put(namedEntitySpawn, PacketType.SPAWN);
 
-            PLAYER_ID = Reflections.getField(namedEntitySpawn, UUID.class);
+            ENTITY_ID = Reflections.getGetter(namedEntitySpawn, int.class);
+            PLAYER_ID = Reflections.getGetter(namedEntitySpawn, UUID.class);
             if (Version.isOrOver(20)) {
+                final Class<?> bundle = Class.forName("net.minecraft.network.protocol.game.ClientboundBundlePacket");
                 PACKET_LIST = Reflections.getField(Class.forName("net.minecraft.network.protocol.BundlePacket"), Iterable.class);
+                PACKET_TYPES.put(bundle, PacketType.BUNDLE);
+                BUNDLE_CONSTRUCTOR = Reflections.getConstructor(bundle, Iterable.class);
+                // the Spigot name first, Paper 1.20.5+ & Mojang mapped servers use the other one
+                for (final String[] names : new String[][]{
+                        {"PacketPlayOutEntityMetadata", "ClientboundSetEntityDataPacket"},
+                        {"PacketPlayOutUpdateAttributes", "ClientboundUpdateAttributesPacket"}
+                }) {
+                    final Class<?> dropped = Reflections.findClass(prefix + names[0], prefix + names[1]).orElse(null);
+                    if (dropped == null) {
+                        // the packet is only kept in the bundle, the disguise still works
+                        Bukkit.getLogger().warning("[ModernDisguise] Failed to find " + names[1] + ", it won't be dropped from bundles");
+                        continue;
+                    }
+                    BUNDLE_DROPPED.put(dropped, Reflections.getField(dropped, int.class));
+                }
             } else {
                 PACKET_LIST = null;
+                BUNDLE_CONSTRUCTOR = null;
             }
         } catch (final Exception e) {
             throw new RuntimeException(e);
@@ -57,63 +99,118 @@ public final class PacketListener extends ChannelDuplexHandler {
             final Object packet,
             final ChannelPromise promise
     ) throws Exception {
-        if (packet == null) {
-            super.write(context, null, promise);
+        // the handler is removed once the last entity disguise is, this covers the time until it is
+        if (provider.getActiveEntityDisguises() == 0) {
+            context.write(packet, promise);
             return;
         }
 
-        final String name = packet.getClass().getSimpleName();
-        if (PACKET_NAME.equals(name)) {
-            this.handleSpawnPacket(context, packet, packet, promise);
+        final PacketType type = packet == null ? null : PACKET_TYPES.get(packet.getClass());
+        if (type == null) {
+            super.write(context, packet, promise);
             return;
-        } else if (BUNDLE_PACKET_NAME.equals(name)) {
-            assert PACKET_LIST != null;
-            final Iterable<?> iterable = (Iterable<?>) PACKET_LIST.get(packet);
-            for (final Object bundlePacket : iterable) {
-                final String packetName = bundlePacket.getClass().getSimpleName();
-                if (packetName.equals(PACKET_NAME)) {
-                    this.handleSpawnPacket(context, bundlePacket, packet, promise);
-                    return;
+        }
+
+        switch (type) {
+            case SPAWN:
+                final DisguiseSnapshot snapshot = this.getSnapshot(packet);
+                if (snapshot == null) {
+                    break;
                 }
-            }
+                provider.refreshAsEntity(snapshot, player);
+                // the spawn is replaced rather than written, whoever listens on its write still hears back
+                promise.trySuccess();
+                return;
+            case BUNDLE:
+                this.handleBundlePacket(context, packet, promise);
+                return;
         }
 
         super.write(context, packet, promise);
     }
 
-    private void handleSpawnPacket(
+    /**
+     * Replaces the spawn packet of an entity disguised player inside a bundle with the disguise's packets,
+     * every other bundled packet is kept so the viewer still receives the equipment, passengers & so on.
+     */
+    private void handleBundlePacket(
             final ChannelHandlerContext context,
-            final Object spawnPacket,
-            final Object passPacket,
+            final Object bundle,
             final ChannelPromise promise
     ) throws Exception {
-        UUID playerID;
+        assert PACKET_LIST != null;
+        final Iterable<?> packets = (Iterable<?>) PACKET_LIST.get(bundle);
+        Object spawnPacket = null;
+        DisguiseSnapshot snapshot = null;
+        for (final Object bundled : packets) {
+            if (PACKET_TYPES.get(bundled.getClass()) == PacketType.SPAWN) {
+                snapshot = this.getSnapshot(bundled);
+                if (snapshot != null) {
+                    spawnPacket = bundled;
+                    break;
+                }
+            }
+        }
+
+        if (snapshot == null) {
+            super.write(context, bundle, promise);
+            return;
+        }
+
+        final List<?> replacement = provider.createEntitySpawnPackets(snapshot);
+        if (replacement == null || BUNDLE_CONSTRUCTOR == null) {
+            // the version can't rewrite bundles, send the disguise on its own instead
+            provider.refreshAsEntity(snapshot, player);
+            promise.trySuccess();
+            return;
+        }
+
+        final int entityId = snapshot.getPlayer().getEntityId();
+        final List<Object> rewritten = new ArrayList<>();
+        for (final Object bundled : packets) {
+            if (bundled == spawnPacket) {
+                rewritten.addAll(replacement);
+                continue;
+            }
+            final FieldAccessor<Integer> dropped = BUNDLE_DROPPED.get(bundled.getClass());
+            if (dropped != null && dropped.getInt(bundled) == entityId) {
+                continue;
+            }
+            rewritten.add(bundled);
+        }
+        super.write(context, BUNDLE_CONSTRUCTOR.newInstance(rewritten), promise);
+    }
+
+    /**
+     * @param spawnPacket the spawn packet being checked
+     * @return the {@link DisguiseSnapshot} of the spawned player if it's disguised as an entity, null otherwise
+     */
+    private DisguiseSnapshot getSnapshot(final Object spawnPacket) {
         try {
-            playerID = PLAYER_ID.get(spawnPacket);
-        } catch (final Exception exception) {
+            final DisguiseSnapshot snapshot = provider.getEntityDisguise((int) ENTITY_ID.invokeExact(spawnPacket));
+            // our own disguise spawn packets share the entity id, they carry the disguise's UUID though
+            if (snapshot != null && snapshot.getUniqueId().equals((Object) PLAYER_ID.invokeExact(spawnPacket))) {
+                return snapshot;
+            }
+        } catch (final Throwable exception) {
             provider.getPlugin().getLogger().log(
                     Level.SEVERE,
-                    "[ModernDisguise] Couldn't get a player's UUID, please report if this ever happens to you.\n"
+                    "[ModernDisguise] Couldn't read a spawn packet, please report if this ever happens to you.\n"
                             + "Version: " + Version.NMS + " (" + Version.VERSION_EXACT + ")\n"
                             + "Packet Name: " + PACKET_NAME + "\n"
                             + "This error is not supposed to happen however it is harmless & won't block any packet from being sent.",
                     exception
             );
-            playerID = null;
-        }
-
-        if (playerID == null) {
-            super.write(context, passPacket, promise);
-            return;
-        }
-
-        final Player refreshed = Bukkit.getPlayer(playerID);
-        if (refreshed != null && provider.isDisguisedAsEntity(refreshed)) {
-            provider.refreshAsEntity(refreshed, false, player);
-            return;
         }
+        return null;
+    }
 
-        super.write(context, passPacket, promise);
+    /**
+     * The packet types that are rewritten by this listener
+     */
+    private enum PacketType {
+        SPAWN,
+        BUNDLE
     }
 
 }
@@ -2,42 +2,92 @@ package dev.iiahmed.disguise.listener;
 
 import dev.iiahmed.disguise.DisguiseManager;
 import dev.iiahmed.disguise.DisguiseProvider;
+import dev.iiahmed.disguise.DisguiseResponse;
 import dev.iiahmed.disguise.UndisguiseResponse;
 import dev.iiahmed.disguise.util.DisguiseUtil;
+import dev.iiahmed.disguise.util.reflection.ReflectionCache;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.AsyncPlayerChatEvent;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.server.PluginDisableEvent;
 
 public final class PlayerListener implements Listener {
 
     private final DisguiseProvider provider = DisguiseManager.getProvider();
 
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onDisable(final PluginDisableEvent event) {
+        // every lookup made while the plugin ran (packet classes, entities & fields) is known by now
+        if (event.getPlugin() == provider.getPlugin()) {
+            ReflectionCache.save();
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPreLogin(final AsyncPlayerPreLoginEvent event) {
+        // players that aren't let in don't need their disguise
+        if (event.getLoginResult() == AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            provider.prefetch(event.getUniqueId(), event.getName());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.HIGHEST)
+    public void onLogin(final PlayerLoginEvent event) {
+        final Player player = event.getPlayer();
+        if (event.getResult() != PlayerLoginEvent.Result.ALLOWED) {
+            provider.forgetLogin(player.getUniqueId());
+            return;
+        }
+
+        // the profile is still the real one here, a login disguise replaces it right after
+        provider.trackLogin(player);
+        // the profile isn't sent to anyone yet, so the disguise needs no refresh,
+        // it's only committed on join so a connection closing before then leaves nothing behind
+        final DisguiseResponse response = provider.disguiseOnLogin(player);
+        if (response != null && response != DisguiseResponse.SUCCESS) {
+            provider.getPlugin().getLogger().info("Disguising player " + player.getName() + " failed on login: " + response);
+        }
+    }
+
     @EventHandler(priority = EventPriority.LOWEST)
     public void onJoin(final PlayerJoinEvent event) {
         final Player player = event.getPlayer();
-        if (provider.performEntityDisguises()) {
+        provider.trackOnline(player);
+        if (DisguiseUtil.INJECTION) {
+            DisguiseUtil.registerChannel(player);
+        }
+        // the handler is only needed while someone is disguised as an entity
+        if (provider.performEntityDisguises() && provider.getActiveEntityDisguises() != 0) {
             DisguiseUtil.inject(player, new PacketListener(player));
         }
+
+        final DisguiseResponse response = provider.disguiseOnJoin(player);
+        if (response != null && response != DisguiseResponse.SUCCESS) {
+            provider.getPlugin().getLogger().info("Disguising player " + player.getName() + " failed on join: " + response);
+        }
     }
 
     @EventHandler(priority = EventPriority.MONITOR)
     public void onLeave(final PlayerQuitEvent event) {
         final Player player = event.getPlayer();
+        provider.removePendingDisguise(player.getUniqueId());
+        provider.untrackOnline(player);
         if (provider.performEntityDisguises()) {
             DisguiseUtil.uninject(player);
         }
-        if (!provider.isDisguised(player)) {
-            return;
-        }
-
-        final UndisguiseResponse response = provider.undisguise(player);
-        if (!"SUCCESS".equals(response.name())) {
-            provider.getPlugin().getLogger().info("Undisguising player " + player.getName() + "  failed on leave");
+        if (provider.isDisguised(player)) {
+            final UndisguiseResponse response = provider.undisguise(player);
+            if (!"SUCCESS".equals(response.name())) {
+                provider.getPlugin().getLogger().info("Undisguising player " + player.getName() + "  failed on leave");
+            }
         }
+        DisguiseUtil.unregisterChannel(player);
     }
 
     @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
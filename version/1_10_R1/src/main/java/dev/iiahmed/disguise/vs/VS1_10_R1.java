@@ -1,19 +1,25 @@
 package dev.iiahmed.disguise.vs;
 
 import dev.iiahmed.disguise.DisguiseProvider;
+import dev.iiahmed.disguise.Entity;
+import dev.iiahmed.disguise.EntityTemplate;
+import dev.iiahmed.disguise.util.PacketBatch;
+import dev.iiahmed.disguise.util.reflection.FieldAccessor;
+import dev.iiahmed.disguise.util.reflection.Reflections;
 import net.minecraft.server.v1_10_R1.*;
-import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.craftbukkit.v1_10_R1.entity.CraftPlayer;
-import org.bukkit.entity.EntityType;
 import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 
 import java.lang.reflect.Field;
-import java.util.Collection;
+import java.util.Set;
 
 public final class VS1_10_R1 extends DisguiseProvider {
 
+    // the players tracking an entity, not every version exposes the set publicly
+    private static final FieldAccessor<?> TRACKED_PLAYERS = Reflections.getField(EntityTrackerEntry.class, Set.class);
+
     private final Field id;
 
     {
@@ -26,69 +32,117 @@ public final class VS1_10_R1 extends DisguiseProvider {
     }
 
     @Override
-    public void refreshAsPlayer(@NotNull final Player player) {
-        if (!player.isOnline()) {
-            return;
-        }
+    protected void refreshSelf(@NotNull final Player player) {
         final Location location = player.getLocation();
         final EntityPlayer ep = ((CraftPlayer) player).getHandle();
-        ep.playerConnection.sendPacket(new PacketPlayOutPlayerInfo(
-                PacketPlayOutPlayerInfo.EnumPlayerInfoAction.REMOVE_PLAYER,
-                ep));
-        ep.playerConnection.sendPacket(
-                new PacketPlayOutRespawn(
+        this.batch(3)
+                .add(new PacketPlayOutPlayerInfo(
+                        PacketPlayOutPlayerInfo.EnumPlayerInfoAction.REMOVE_PLAYER,
+                        ep))
+                .add(new PacketPlayOutRespawn(
                         ep.world.worldProvider.getDimensionManager().getDimensionID(), // don't use EntityPlayer's dimension, as it will be wrong
                         ep.world.getDifficulty(),
                         ep.world.getWorldData().getType(),
                         ep.playerInteractManager.getGameMode()
-                )
-        );
-        ep.playerConnection.sendPacket(
-                new PacketPlayOutUpdateHealth(ep.getHealth(), ep.getFoodData().foodLevel, ep.getFoodData().saturationLevel)
-        );
+                ))
+                .add(new PacketPlayOutUpdateHealth(ep.getHealth(), ep.getFoodData().foodLevel, ep.getFoodData().saturationLevel))
+                .send(player);
         player.teleport(location);
-        ep.playerConnection.sendPacket(new PacketPlayOutPlayerInfo(
-                PacketPlayOutPlayerInfo.EnumPlayerInfoAction.ADD_PLAYER,
-                ep));
+        this.batch(1)
+                .add(new PacketPlayOutPlayerInfo(
+                        PacketPlayOutPlayerInfo.EnumPlayerInfoAction.ADD_PLAYER,
+                        ep))
+                .send(player);
         player.updateInventory();
-        for (final Player serverPlayer : Bukkit.getOnlinePlayers()) {
-            serverPlayer.hidePlayer(player);
-            serverPlayer.showPlayer(player);
+    }
+
+    @Override
+    protected void refreshTabList(@NotNull final Player player, final boolean self) {
+        final EntityPlayer ep = ((CraftPlayer) player).getHandle();
+        this.batch(2)
+                .add(new PacketPlayOutPlayerInfo(PacketPlayOutPlayerInfo.EnumPlayerInfoAction.REMOVE_PLAYER, ep))
+                .add(new PacketPlayOutPlayerInfo(PacketPlayOutPlayerInfo.EnumPlayerInfoAction.ADD_PLAYER, ep))
+                .broadcast(player, self);
+    }
+
+    @Override
+    protected void refreshViewers(@NotNull final Player player, final boolean self) {
+        final EntityPlayer ep = ((CraftPlayer) player).getHandle();
+        final EntityTrackerEntry entry = this.getTrackedEntity(ep);
+        // copied first, untracking removes the players from the tracked set
+        final Player[] trackers = entry == null ? new Player[0] : this.getTrackers(player);
+        for (final Player tracker : trackers) {
+            entry.clear(((CraftPlayer) tracker).getHandle());
+        }
+        this.refreshTabList(player, self);
+        for (final Player tracker : trackers) {
+            entry.updatePlayer(((CraftPlayer) tracker).getHandle());
         }
     }
 
 
     @Override
-    public void refreshAsEntity(@NotNull final Player refreshed, final boolean remove, final Player... targets) {
-        if (!isDisguised(refreshed) || targets.length == 0 || !getInfo(refreshed).hasEntity()) {
+    protected void refreshAsEntity(@NotNull final Player refreshed, @NotNull final EntityTemplate template, final boolean remove, final Player... targets) {
+        if (targets.length == 0) {
             return;
         }
         final EntityPlayer p = ((CraftPlayer) refreshed).getHandle();
-        final EntityType type = getInfo(refreshed).getEntityType();
-        final PacketPlayOutSpawnEntityLiving spawn;
-        final Collection<AttributeInstance> attributeMapBase;
-        try {
-            final EntityLiving entity = (EntityLiving) this.entityProvider.create(type, p.world);
-            attributeMapBase = entity.getAttributeMap().a();
-
-            spawn = new PacketPlayOutSpawnEntityLiving(entity);
-            id.set(spawn, refreshed.getEntityId());
-        } catch (final Exception e) {
-            throw new RuntimeException("Couldn't change entityID for " + refreshed.getName(), e);
-        }
-        final PacketPlayOutEntityDestroy destroy = new PacketPlayOutEntityDestroy(refreshed.getEntityId());
+        final PacketPlayOutEntityDestroy destroy = template.getDestroy();
+        final PacketPlayOutSpawnEntityLiving spawn = template.getSpawn();
         final PacketPlayOutEntityTeleport tp = new PacketPlayOutEntityTeleport(p);
-        final PacketPlayOutUpdateAttributes attributes = new PacketPlayOutUpdateAttributes(refreshed.getEntityId(), attributeMapBase);
+        final PacketPlayOutUpdateAttributes attributes = template.getAttributes();
+        final PacketBatch batch = this.batch(4);
+        if (remove) {
+            batch.add(destroy);
+        }
+        batch.add(spawn).add(tp).add(attributes);
         for (final Player player : targets) {
             if (player == refreshed) continue;
-            final EntityPlayer ep = ((CraftPlayer) player).getHandle();
-            if (remove) {
-                ep.playerConnection.sendPacket(destroy);
-            }
-            ep.playerConnection.sendPacket(spawn);
-            ep.playerConnection.sendPacket(tp);
-            ep.playerConnection.sendPacket(attributes);
+            batch.send(player);
         }
     }
 
+    @Override
+    protected Player[] getTrackers(@NotNull final Player player) {
+        final EntityPlayer ep = ((CraftPlayer) player).getHandle();
+        final EntityTrackerEntry entry = this.getTrackedEntity(ep);
+        if (entry == null) {
+            return new Player[0];
+        }
+
+        final Set<?> tracked = (Set<?>) TRACKED_PLAYERS.get(entry);
+        final Player[] trackers = new Player[tracked.size()];
+        int index = 0;
+        for (final Object tracker : tracked) {
+            trackers[index++] = ((EntityPlayer) tracker).getBukkitEntity();
+        }
+        return trackers;
+    }
+
+    private EntityTrackerEntry getTrackedEntity(@NotNull final EntityPlayer ep) {
+        return (EntityTrackerEntry) ((WorldServer) ep.world).tracker.trackedEntities.get(ep.getId());
+    }
+
+    @Override
+    protected void sendPacket(@NotNull final Player target, @NotNull final Object packet) {
+        ((CraftPlayer) target).getHandle().playerConnection.sendPacket((Packet) packet);
+    }
+
+    @Override
+    protected EntityTemplate createEntityTemplate(@NotNull final Player player, @NotNull final Entity entity) throws Exception {
+        final EntityPlayer p = ((CraftPlayer) player).getHandle();
+        final EntityLiving living = (EntityLiving) this.entityProvider.create(entity.getType(), p.world);
+
+        // the spawn packet doesn't depend on the player's position, the teleport packet handles that
+        final PacketPlayOutSpawnEntityLiving spawn = new PacketPlayOutSpawnEntityLiving(living);
+        id.set(spawn, player.getEntityId());
+        return new EntityTemplate(
+                entity,
+                living,
+                spawn,
+                new PacketPlayOutUpdateAttributes(player.getEntityId(), living.getAttributeMap().a()),
+                new PacketPlayOutEntityDestroy(player.getEntityId())
+        );
+    }
+
 }
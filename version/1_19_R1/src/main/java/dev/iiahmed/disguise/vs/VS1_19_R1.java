@@ -1,32 +1,38 @@
 package dev.iiahmed.disguise.vs;
 
 import dev.iiahmed.disguise.DisguiseProvider;
+import dev.iiahmed.disguise.Entity;
+import dev.iiahmed.disguise.EntityTemplate;
+import dev.iiahmed.disguise.util.PacketBatch;
+import dev.iiahmed.disguise.util.reflection.FieldAccessor;
+import dev.iiahmed.disguise.util.reflection.Reflections;
+import net.minecraft.network.protocol.Packet;
 import net.minecraft.network.protocol.game.*;
+import net.minecraft.server.level.ChunkMap;
 import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.server.network.ServerPlayerConnection;
 import net.minecraft.world.entity.LivingEntity;
-import net.minecraft.world.entity.ai.attributes.AttributeInstance;
-import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.craftbukkit.v1_19_R1.entity.CraftPlayer;
 import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.Collection;
+import java.util.Set;
 
 public final class VS1_19_R1 extends DisguiseProvider {
 
+    // the players tracking an entity, not every version exposes the set publicly
+    private static final FieldAccessor<?> TRACKED_PLAYERS = Reflections.getField(ChunkMap.TrackedEntity.class, Set.class);
+
     @Override
-    public void refreshAsPlayer(@NotNull final Player player) {
-        if (!player.isOnline()) {
-            return;
-        }
+    protected void refreshSelf(@NotNull final Player player) {
         final Location location = player.getLocation();
         final ServerPlayer ep = ((CraftPlayer) player).getHandle();
-        ep.connection.send(new ClientboundPlayerInfoPacket(
-                ClientboundPlayerInfoPacket.Action.REMOVE_PLAYER,
-                ep));
-        ep.connection.send(
-                new ClientboundRespawnPacket(
+        this.batch(2)
+                .add(new ClientboundPlayerInfoPacket(
+                        ClientboundPlayerInfoPacket.Action.REMOVE_PLAYER,
+                        ep))
+                .add(new ClientboundRespawnPacket(
                         ep.level.dimensionTypeId(),
                         ep.level.dimension(),
                         player.getWorld().getSeed(),
@@ -34,61 +40,112 @@ public final class VS1_19_R1 extends DisguiseProvider {
                         ep.gameMode.getGameModeForPlayer(),
                         false, false, true,
                         ep.getLastDeathLocation()
-                )
-        );
+                ))
+                .send(player);
         player.teleport(location);
-        ep.connection.send(new ClientboundPlayerInfoPacket(
-                ClientboundPlayerInfoPacket.Action.ADD_PLAYER,
-                ep));
+        this.batch(1)
+                .add(new ClientboundPlayerInfoPacket(
+                        ClientboundPlayerInfoPacket.Action.ADD_PLAYER,
+                        ep))
+                .send(player);
         player.updateInventory();
-        for (final Player serverPlayer : Bukkit.getOnlinePlayers()) {
-            serverPlayer.hidePlayer(plugin, player);
-            serverPlayer.showPlayer(plugin, player);
+    }
+
+    @Override
+    protected void refreshTabList(@NotNull final Player player, final boolean self) {
+        final ServerPlayer ep = ((CraftPlayer) player).getHandle();
+        this.batch(2)
+                .add(new ClientboundPlayerInfoPacket(ClientboundPlayerInfoPacket.Action.REMOVE_PLAYER, ep))
+                .add(new ClientboundPlayerInfoPacket(ClientboundPlayerInfoPacket.Action.ADD_PLAYER, ep))
+                .broadcast(player, self);
+    }
+
+    @Override
+    protected void refreshViewers(@NotNull final Player player, final boolean self) {
+        final ServerPlayer ep = ((CraftPlayer) player).getHandle();
+        final ChunkMap.TrackedEntity entry = this.getTrackedEntity(ep);
+        // copied first, untracking removes the players from the tracked set
+        final Player[] trackers = entry == null ? new Player[0] : this.getTrackers(player);
+        for (final Player tracker : trackers) {
+            entry.removePlayer(((CraftPlayer) tracker).getHandle());
+        }
+        this.refreshTabList(player, self);
+        for (final Player tracker : trackers) {
+            entry.updatePlayer(((CraftPlayer) tracker).getHandle());
         }
     }
 
     @Override
-    public void refreshAsEntity(@NotNull final Player refreshed, final boolean remove, final Player... targets) {
-        if (!isDisguised(refreshed) || targets.length == 0 || !getInfo(refreshed).hasEntity()) {
+    protected void refreshAsEntity(@NotNull final Player refreshed, @NotNull final EntityTemplate template, final boolean remove, final Player... targets) {
+        if (targets.length == 0) {
             return;
         }
         final ServerPlayer handle = ((CraftPlayer) refreshed).getHandle();
-        final org.bukkit.entity.EntityType type = getInfo(refreshed).getEntityType();
-        final ClientboundAddEntityPacket spawn;
-        final Collection<AttributeInstance> attributesSet;
-        try {
-            final LivingEntity entity = (LivingEntity) this.entityProvider.create(type, handle.getLevel());
-            attributesSet = entity.getAttributes().getDirtyAttributes();
-
-            spawn = new ClientboundAddEntityPacket(
-                    handle.getId(),
-                    entity.getUUID(),
-                    handle.getX(),
-                    handle.getY(),
-                    handle.getZ(),
-                    handle.getXRot(),
-                    handle.getYRot(),
-                    entity.getType(),
-                    0,
-                    handle.getDeltaMovement(),
-                    handle.getYHeadRot()
-            );
-        } catch (final Exception e) {
-            throw new RuntimeException("Couldn't change entityID for " + refreshed.getName(), e);
-        }
-        final ClientboundRemoveEntitiesPacket destroy = new ClientboundRemoveEntitiesPacket(refreshed.getEntityId());
+        final LivingEntity living = template.getHandle();
+        final ClientboundAddEntityPacket spawn = new ClientboundAddEntityPacket(
+                handle.getId(),
+                living.getUUID(),
+                handle.getX(),
+                handle.getY(),
+                handle.getZ(),
+                handle.getXRot(),
+                handle.getYRot(),
+                living.getType(),
+                0,
+                handle.getDeltaMovement(),
+                handle.getYHeadRot()
+        );
+        final ClientboundRemoveEntitiesPacket destroy = template.getDestroy();
         final ClientboundTeleportEntityPacket tp = new ClientboundTeleportEntityPacket(handle);
-        final ClientboundUpdateAttributesPacket attributes = new ClientboundUpdateAttributesPacket(refreshed.getEntityId(), attributesSet);
+        final ClientboundUpdateAttributesPacket attributes = template.getAttributes();
+        final PacketBatch batch = this.batch(4);
+        if (remove) {
+            batch.add(destroy);
+        }
+        batch.add(spawn).add(tp).add(attributes);
         for (final Player player : targets) {
             if (player == refreshed) continue;
-            final ServerPlayer ep = ((CraftPlayer) player).getHandle();
-            if (remove) {
-                ep.connection.send(destroy);
-            }
-            ep.connection.send(spawn);
-            ep.connection.send(tp);
-            ep.connection.send(attributes);
+            batch.send(player);
+        }
+    }
+
+    @Override
+    protected Player[] getTrackers(@NotNull final Player player) {
+        final ServerPlayer handle = ((CraftPlayer) player).getHandle();
+        final ChunkMap.TrackedEntity entry = this.getTrackedEntity(handle);
+        if (entry == null) {
+            return new Player[0];
+        }
+
+        final Set<?> tracked = (Set<?>) TRACKED_PLAYERS.get(entry);
+        final Player[] trackers = new Player[tracked.size()];
+        int index = 0;
+        for (final Object tracker : tracked) {
+            trackers[index++] = ((ServerPlayerConnection) tracker).getPlayer().getBukkitEntity();
         }
+        return trackers;
+    }
+
+    private ChunkMap.TrackedEntity getTrackedEntity(@NotNull final ServerPlayer handle) {
+        return handle.getLevel().getChunkSource().chunkMap.entityMap.get(handle.getId());
+    }
+
+    @Override
+    protected void sendPacket(@NotNull final Player target, @NotNull final Object packet) {
+        ((CraftPlayer) target).getHandle().connection.send((Packet<?>) packet);
+    }
+
+    @Override
+    protected EntityTemplate createEntityTemplate(@NotNull final Player player, @NotNull final Entity entity) throws Exception {
+        final ServerPlayer handle = ((CraftPlayer) player).getHandle();
+        final LivingEntity living = (LivingEntity) this.entityProvider.create(entity.getType(), handle.getLevel());
+        return new EntityTemplate(
+                entity,
+                living,
+                null,
+                new ClientboundUpdateAttributesPacket(player.getEntityId(), living.getAttributes().getDirtyAttributes()),
+                new ClientboundRemoveEntitiesPacket(player.getEntityId())
+        );
     }
 
 }
@@ -2,16 +2,21 @@ package dev.iiahmed.disguise.vs;
 
 import dev.iiahmed.disguise.DisguiseProvider;
 import dev.iiahmed.disguise.Entity;
+import dev.iiahmed.disguise.EntityTemplate;
 import dev.iiahmed.disguise.attribute.Attribute;
+import dev.iiahmed.disguise.util.PacketBatch;
+import dev.iiahmed.disguise.util.reflection.FieldAccessor;
+import dev.iiahmed.disguise.util.reflection.Reflections;
 import net.minecraft.core.Holder;
 import net.minecraft.core.registries.Registries;
 import net.minecraft.network.protocol.Packet;
 import net.minecraft.network.protocol.game.*;
 import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.level.ChunkMap;
+import net.minecraft.server.level.ServerLevel;
 import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.server.network.ServerPlayerConnection;
 import net.minecraft.world.entity.LivingEntity;
-import net.minecraft.world.entity.ai.attributes.AttributeInstance;
-import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.craftbukkit.v1_20_R4.CraftRegistry;
 import org.bukkit.craftbukkit.v1_20_R4.entity.CraftPlayer;
@@ -23,95 +28,152 @@ import java.util.*;
 @SuppressWarnings("all")
 public final class VS1_20_R4 extends DisguiseProvider {
 
+    // the players tracking an entity, not every version exposes the set publicly
+    private static final FieldAccessor<?> TRACKED_PLAYERS = Reflections.getField(ChunkMap.TrackedEntity.class, Set.class);
+
     @Override
-    public void refreshAsPlayer(@NotNull final Player player) {
-        if (!player.isOnline()) {
-            return;
-        }
+    protected void refreshSelf(@NotNull final Player player) {
         final Location location = player.getLocation();
         final ServerPlayer ep = ((CraftPlayer) player).getHandle();
-        ep.connection.send(new ClientboundPlayerInfoRemovePacket(Collections.singletonList(ep.getUUID())));
-        ep.connection.send(
-                new ClientboundRespawnPacket(
+        this.batch(2)
+                .add(new ClientboundPlayerInfoRemovePacket(Collections.singletonList(ep.getUUID())))
+                .add(new ClientboundRespawnPacket(
                         ep.createCommonSpawnInfo(ep.serverLevel()),
                         ClientboundRespawnPacket.KEEP_ALL_DATA
-                )
-        );
+                ))
+                .send(player);
         player.teleport(location);
         ep.getServer().getPlayerList().sendLevelInfo(ep, ep.serverLevel());
-        ep.connection.send(new ClientboundPlayerInfoUpdatePacket(
-                ClientboundPlayerInfoUpdatePacket.Action.ADD_PLAYER,
-                ep));
-        ep.connection.send(new ClientboundPlayerInfoUpdatePacket(
-                ClientboundPlayerInfoUpdatePacket.Action.UPDATE_LISTED,
-                ep));
+        this.batch(2)
+                .add(new ClientboundPlayerInfoUpdatePacket(
+                        ClientboundPlayerInfoUpdatePacket.Action.ADD_PLAYER,
+                        ep))
+                .add(new ClientboundPlayerInfoUpdatePacket(
+                        ClientboundPlayerInfoUpdatePacket.Action.UPDATE_LISTED,
+                        ep))
+                .send(player);
         ep.containerMenu.sendAllDataToRemote(); // originally player.updateInventory();
-        for (final Player serverPlayer : Bukkit.getOnlinePlayers()) {
-            serverPlayer.hidePlayer(plugin, player);
-            serverPlayer.showPlayer(plugin, player);
+    }
+
+    @Override
+    protected void refreshTabList(@NotNull final Player player, final boolean self) {
+        final ServerPlayer ep = ((CraftPlayer) player).getHandle();
+        this.batch(2)
+                .add(new ClientboundPlayerInfoRemovePacket(Collections.singletonList(ep.getUUID())))
+                .add(ClientboundPlayerInfoUpdatePacket.createPlayerInitializing(Collections.singletonList(ep)))
+                .broadcast(player, self);
+    }
+
+    @Override
+    protected void refreshViewers(@NotNull final Player player, final boolean self) {
+        final ServerPlayer ep = ((CraftPlayer) player).getHandle();
+        final ChunkMap.TrackedEntity entry = this.getTrackedEntity(ep);
+        // copied first, untracking removes the players from the tracked set
+        final Player[] trackers = entry == null ? new Player[0] : this.getTrackers(player);
+        for (final Player tracker : trackers) {
+            entry.removePlayer(((CraftPlayer) tracker).getHandle());
+        }
+        this.refreshTabList(player, self);
+        for (final Player tracker : trackers) {
+            entry.updatePlayer(((CraftPlayer) tracker).getHandle());
         }
     }
 
     @Override
-    public void refreshAsEntity(@NotNull final Player refreshed, final boolean remove, final Player... targets) {
-        if (!isDisguised(refreshed) || targets.length == 0 || !getInfo(refreshed).hasEntity()) {
+    protected void refreshAsEntity(@NotNull final Player refreshed, @NotNull final EntityTemplate template, final boolean remove, final Player... targets) {
+        if (targets.length == 0) {
             return;
         }
 
-        final ServerPlayer handle = ((CraftPlayer) refreshed).getHandle();
-        final Entity entity = getInfo(refreshed).getEntity();
-
-        final ClientboundAddEntityPacket spawn;
-        final Collection<AttributeInstance> attributesSet;
-        try {
-            final LivingEntity living = (LivingEntity) this.entityProvider.create(entity.getType(), handle.level());
-
-            for (final Map.Entry<Attribute, Double> entry : entity.getAttributes().entrySet()) {
-                final String name = entry.getKey().getKey();
-                final Holder<net.minecraft.world.entity.ai.attributes.Attribute> holder = CraftRegistry.getMinecraftRegistry(Registries.ATTRIBUTE).wrapAsHolder(
-                        CraftRegistry.getMinecraftRegistry(Registries.ATTRIBUTE).get(ResourceLocation.tryParse(name))
-                );
-                living.getAttribute(holder).setBaseValue(entry.getValue());
-            }
-
-            attributesSet = living.getAttributes().getDirtyAttributes();
-            spawn = new ClientboundAddEntityPacket(
-                    handle.getId(),
-                    living.getUUID(),
-                    handle.getX(),
-                    handle.getY(),
-                    handle.getZ(),
-                    handle.getXRot(),
-                    handle.getYRot(),
-                    living.getType(),
-                    0,
-                    handle.getDeltaMovement(),
-                    handle.getYHeadRot()
-            );
-        } catch (final Exception e) {
-            throw new RuntimeException(e);
+        final List<Packet<? super ClientGamePacketListener>> packets = this.createSpawnPackets(refreshed, template);
+        if (remove) {
+            packets.add(0, template.getDestroy());
         }
 
-        final ClientboundTeleportEntityPacket tp = new ClientboundTeleportEntityPacket(handle);
-        final ClientboundUpdateAttributesPacket attributes = new ClientboundUpdateAttributesPacket(refreshed.getEntityId(), attributesSet);
-
-        final List<Packet<? super ClientGamePacketListener>> packets = new ArrayList<Packet<? super ClientGamePacketListener>>() {
-            {
-                if (remove) {
-                    add(new ClientboundRemoveEntitiesPacket(refreshed.getEntityId()));
-                }
-                add(spawn);
-                add(tp);
-                add(attributes);
-            }
-        };
-
         final ClientboundBundlePacket bundlePacket = new ClientboundBundlePacket(packets);
+        final PacketBatch batch = this.batch(1).add(bundlePacket);
         for (final Player player : targets) {
             if (player == refreshed) continue;
-            final ServerPlayer ep = ((CraftPlayer) player).getHandle();
-            ep.connection.send(bundlePacket);
+            batch.send(player);
         }
     }
 
+    @Override
+    protected List<Packet<? super ClientGamePacketListener>> createEntitySpawnPackets(@NotNull final Player refreshed, @NotNull final EntityTemplate template) {
+        return this.createSpawnPackets(refreshed, template);
+    }
+
+    private List<Packet<? super ClientGamePacketListener>> createSpawnPackets(@NotNull final Player refreshed, @NotNull final EntityTemplate template) {
+        final ServerPlayer handle = ((CraftPlayer) refreshed).getHandle();
+        final LivingEntity living = template.getHandle();
+        final ClientboundAddEntityPacket spawn = new ClientboundAddEntityPacket(
+                handle.getId(),
+                living.getUUID(),
+                handle.getX(),
+                handle.getY(),
+                handle.getZ(),
+                handle.getXRot(),
+                handle.getYRot(),
+                living.getType(),
+                0,
+                handle.getDeltaMovement(),
+                handle.getYHeadRot()
+        );
+        final ClientboundTeleportEntityPacket tp = new ClientboundTeleportEntityPacket(handle);
+
+        final List<Packet<? super ClientGamePacketListener>> packets = new ArrayList<>(4);
+        packets.add(spawn);
+        packets.add(tp);
+        packets.add(template.getAttributes());
+        return packets;
+    }
+
+    @Override
+    protected Player[] getTrackers(@NotNull final Player player) {
+        final ServerPlayer handle = ((CraftPlayer) player).getHandle();
+        final ChunkMap.TrackedEntity entry = this.getTrackedEntity(handle);
+        if (entry == null) {
+            return new Player[0];
+        }
+
+        final Set<?> tracked = (Set<?>) TRACKED_PLAYERS.get(entry);
+        final Player[] trackers = new Player[tracked.size()];
+        int index = 0;
+        for (final Object tracker : tracked) {
+            trackers[index++] = ((ServerPlayerConnection) tracker).getPlayer().getBukkitEntity();
+        }
+        return trackers;
+    }
+
+    private ChunkMap.TrackedEntity getTrackedEntity(@NotNull final ServerPlayer handle) {
+        return ((ServerLevel) handle.level()).getChunkSource().chunkMap.entityMap.get(handle.getId());
+    }
+
+    @Override
+    protected void sendPacket(@NotNull final Player target, @NotNull final Object packet) {
+        ((CraftPlayer) target).getHandle().connection.send((Packet<?>) packet);
+    }
+
+    @Override
+    protected EntityTemplate createEntityTemplate(@NotNull final Player player, @NotNull final Entity entity) throws Exception {
+        final ServerPlayer handle = ((CraftPlayer) player).getHandle();
+        final LivingEntity living = (LivingEntity) this.entityProvider.create(entity.getType(), handle.level());
+
+        for (final Map.Entry<Attribute, Double> entry : entity.getAttributes().entrySet()) {
+            final String name = entry.getKey().getKey();
+            final Holder<net.minecraft.world.entity.ai.attributes.Attribute> holder = CraftRegistry.getMinecraftRegistry(Registries.ATTRIBUTE).wrapAsHolder(
+                    CraftRegistry.getMinecraftRegistry(Registries.ATTRIBUTE).get(ResourceLocation.tryParse(name))
+            );
+            living.getAttribute(holder).setBaseValue(entry.getValue());
+        }
+
+        return new EntityTemplate(
+                entity,
+                living,
+                null,
+                new ClientboundUpdateAttributesPacket(player.getEntityId(), living.getAttributes().getDirtyAttributes()),
+                new ClientboundRemoveEntitiesPacket(player.getEntityId())
+        );
+    }
+
 }
@@ -1,21 +1,43 @@
 package dev.iiahmed.disguise.vs;
 
 import dev.iiahmed.disguise.DisguiseProvider;
+import dev.iiahmed.disguise.Entity;
+import dev.iiahmed.disguise.EntityTemplate;
 import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 
 public final class VS_Unavailable extends DisguiseProvider {
 
     @Override
-    public void refreshAsPlayer(@NotNull final Player player) {
+    protected void refreshSelf(@NotNull final Player player) {
         // do nothing
     }
 
     @Override
-    public void refreshAsEntity(@NotNull final Player refreshed, final boolean remove, final Player... targets) {
+    protected void refreshTabList(@NotNull final Player player, final boolean self) {
         // do nothing
     }
 
+    @Override
+    protected void refreshViewers(@NotNull final Player player, final boolean self) {
+        // do nothing
+    }
+
+    @Override
+    protected void refreshAsEntity(@NotNull final Player refreshed, @NotNull final EntityTemplate template, final boolean remove, final Player... targets) {
+        // do nothing
+    }
+
+    @Override
+    protected void sendPacket(@NotNull final Player target, @NotNull final Object packet) {
+        // do nothing
+    }
+
+    @Override
+    protected EntityTemplate createEntityTemplate(@NotNull final Player player, @NotNull final Entity entity) {
+        return null;
+    }
+
     @Override
     public boolean isVersionSupported() {
         return false;